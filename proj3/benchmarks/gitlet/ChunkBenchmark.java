@@ -0,0 +1,174 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static gitlet.GitletOperator.*;
+
+/** Benchmarks of chunking a large binary file edited in place, against
+ *  storing it whole. Commit stores each new version and counts the bytes
+ *  committed and the bytes the pack grew by; their quotient is the ratio
+ *  saved. Checkout streams the file back out of the pack, and chunk cuts
+ *  a buffer of BUFFERSIZE bytes, so BUFFERSIZE over its score is the
+ *  throughput of the chunker.
+ *  @author Shixuan (Wayne) Li
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChunkBenchmark {
+
+    /** A repository tracking one binary file, built once per run. */
+    @State(Scope.Benchmark)
+    public static class Repository {
+
+        /** Bytes of the file. */
+        @Param({"16777216"})
+        public int size;
+        /** If chunking is on. */
+        @Param({"on", "off"})
+        public String chunking;
+
+        /** Build the repository. */
+        @Setup(Level.Trial)
+        public void build() {
+            Workspace.enter();
+            Workspace.run("init");
+            Workspace.run("chunking", chunking);
+            Workspace.writeRandom(NAME, size, 0);
+            Workspace.run("add", NAME);
+            Workspace.run("commit", "binary");
+        }
+
+        /** Delete the repository. */
+        @TearDown(Level.Trial)
+        public void clear() {
+            Workspace.clear();
+        }
+
+        /** Edits made so far. */
+        int _round;
+    }
+
+    /** The file edited in place and staged, before commit. */
+    @State(Scope.Benchmark)
+    public static class Edited {
+
+        /** Overwrite a few bytes somewhere in the file and stage it.
+         * @param repo -- the repository. */
+        @Setup(Level.Invocation)
+        public void edit(Repository repo) {
+            repo._round += 1;
+            Random random = new Random(repo._round);
+            byte[] edit = new byte[EDIT];
+            random.nextBytes(edit);
+            try (RandomAccessFile file = new RandomAccessFile(NAME, "rw")) {
+                file.seek(random.nextInt(repo.size - EDIT));
+                file.write(edit);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            Workspace.run("add", NAME);
+        }
+    }
+
+    /** Bytes committed and bytes stored, over an iteration. */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Stored {
+
+        /** Bytes of the versions committed. */
+        public long bytesCommitted;
+        /** Bytes the pack grew by. */
+        public long bytesStored;
+
+        /** Start counting again. */
+        @Setup(Level.Iteration)
+        public void reset() {
+            bytesCommitted = 0;
+            bytesStored = 0;
+        }
+    }
+
+    /** A buffer of random bytes to cut. */
+    @State(Scope.Benchmark)
+    public static class Content {
+
+        /** Bytes of the buffer. */
+        @Param({"67108864"})
+        public int bufferSize;
+
+        /** Fill the buffer. */
+        @Setup(Level.Trial)
+        public void fill() {
+            byte[] content = new byte[bufferSize];
+            new Random(0).nextBytes(content);
+            _buffer = ByteBuffer.wrap(content);
+        }
+
+        /** Content to cut. */
+        ByteBuffer _buffer;
+    }
+
+    /** Commit the edited file.
+     * @param repo -- the repository
+     * @param edited -- edit staged
+     * @param stored -- bytes counted. */
+    @Benchmark
+    public void commit(Repository repo, Edited edited, Stored stored) {
+        File pack = new File(PATH_PACK + Pack.DATA_FILE);
+        long before = pack.length();
+        Workspace.run("commit", "edit " + repo._round);
+        stored.bytesCommitted += repo.size;
+        stored.bytesStored += pack.length() - before;
+    }
+
+    /** Write the file as committed last.
+     * @param repo -- the repository. */
+    @Benchmark
+    public void checkout(Repository repo) {
+        Workspace.run("checkout", "--", NAME);
+    }
+
+    /** Cut a buffer into chunks.
+     * @param content -- the buffer
+     * @return -- number of chunks. */
+    @Benchmark
+    public int chunk(Content content) {
+        int result = 0;
+        int length;
+        for (int start = 0;
+             (length = Chunker.next(content._buffer, start)) > 0;
+             start += length) {
+            result += 1;
+        }
+        return result;
+    }
+
+    /** Name of the file. */
+    private static final String NAME = "artifact.bin";
+    /** Bytes overwritten by an edit. */
+    private static final int EDIT = 64;
+
+}
@@ -0,0 +1,106 @@
+package gitlet;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static gitlet.Utils.*;
+
+/** Benchmark of restoring a packed commit from its content, written in
+ *  text as before or in binary as now. Walking the history only needs
+ *  the parents; log needs every field.
+ *  @author Shixuan (Wayne) Li
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CommitBenchmark {
+
+    /** Parents of the commit. */
+    @Param({"1", "2"})
+    public int parents;
+    /** Characters in the log message. */
+    @Param({"40", "1000"})
+    public int messageLength;
+
+    /** Write the commit in both encodings. */
+    @Setup(Level.Trial)
+    public void build() {
+        StringBuilder text = new StringBuilder();
+        text.append("merged ").append(parents > 1).append('\n');
+        text.append("date Thu Jan 01 00:00:00 1970 +0000\n");
+        for (int i = 0; i < parents; i += 1) {
+            text.append("parent ").append(sha1("parent", "" + i))
+                    .append('\n');
+        }
+        text.append("tree ").append(sha1("tree")).append("\n\n");
+        for (int i = 0; i < messageLength; i += 1) {
+            text.append((char) ('a' + i % ('z' - 'a' + 1)));
+        }
+        _text = text.toString().getBytes(StandardCharsets.UTF_8);
+        _binary = Commit.decode(ID, ByteBuffer.wrap(_text), null).encode();
+    }
+
+    /** Restore a text commit for its parents.
+     * @return -- parents. */
+    @Benchmark
+    public String[] textParents() {
+        return Commit.decode(ID, ByteBuffer.wrap(_text), null).myParents();
+    }
+
+    /** Restore a binary commit for its parents.
+     * @return -- parents. */
+    @Benchmark
+    public String[] binaryParents() {
+        return Commit.decode(ID, ByteBuffer.wrap(_binary), null)
+                .myParents();
+    }
+
+    /** Restore a text commit for every field.
+     * @return -- the commit. */
+    @Benchmark
+    public Commit textFull() {
+        return readAll(Commit.decode(ID, ByteBuffer.wrap(_text), null));
+    }
+
+    /** Restore a binary commit for every field.
+     * @return -- the commit. */
+    @Benchmark
+    public Commit binaryFull() {
+        return readAll(Commit.decode(ID, ByteBuffer.wrap(_binary), null));
+    }
+
+    /** Read every field of a commit, as log does.
+     * @param commit -- commit
+     * @return -- the commit. */
+    private static Commit readAll(Commit commit) {
+        commit.myParents();
+        commit.myDate();
+        commit.myMessage();
+        return commit;
+    }
+
+    /** Hash the commits are restored under. */
+    private static final String ID = sha1("commit");
+    /** The commit in text. */
+    private byte[] _text;
+    /** The commit in binary. */
+    private byte[] _binary;
+
+}
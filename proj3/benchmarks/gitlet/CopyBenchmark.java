@@ -0,0 +1,99 @@
+package gitlet;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import static gitlet.GitletOperator.*;
+
+/** Benchmark of copying a plain file, as checkout, fetch and push do:
+ *  through a 1 KiB buffer on the heap, as copyPlains used to, against
+ *  copyFiles, which has the channels move the bytes. Run with
+ *  "-p size=1073741824" for a 1 GiB file.
+ *  @author Shixuan (Wayne) Li
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CopyBenchmark {
+
+    /** Bytes in the file copied. */
+    @Param({"1024", "1048576", "67108864"})
+    public long size;
+
+    /** Write the file to copy.
+     * @throws IOException -- if it cannot be written. */
+    @Setup(Level.Trial)
+    public void write() throws IOException {
+        Workspace.enter();
+        try (RandomAccessFile file = new RandomAccessFile(SOURCE, "rw")) {
+            byte[] block = new byte[BLOCK];
+            new Random(SEED).nextBytes(block);
+            for (long done = 0; done < size; done += block.length) {
+                file.write(block, 0,
+                        (int) Math.min(block.length, size - done));
+            }
+        }
+    }
+
+    /** Delete the files. */
+    @TearDown(Level.Trial)
+    public void clear() {
+        Workspace.clear();
+    }
+
+    /** Copy through a buffer of PACE bytes on the heap.
+     * @throws IOException -- if the files cannot be read or written. */
+    @Benchmark
+    public void buffered() throws IOException {
+        try (InputStream in = new FileInputStream(SOURCE);
+             OutputStream out = new FileOutputStream(TARGET)) {
+            byte[] buf = new byte[PACE];
+            int length;
+            while ((length = in.read(buf)) > 0) {
+                out.write(buf, 0, length);
+            }
+        }
+    }
+
+    /** Copy as gitlet does. */
+    @Benchmark
+    public void transfer() {
+        copyFiles(new File(SOURCE), new File(TARGET));
+    }
+
+    /** Buffer of the old copy. */
+    private static final int PACE = 1024;
+    /** Bytes written at a time when making the file. */
+    private static final int BLOCK = 1 << 16;
+    /** Seed of the bytes of the file. */
+    private static final long SEED = 61;
+    /** The file copied. */
+    private static final String SOURCE = "source";
+    /** The copy. */
+    private static final String TARGET = "target";
+
+}
@@ -0,0 +1,107 @@
+package gitlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmark of the line diff and three-way merge on files of several
+ *  megabytes. Ours and theirs each change about one line in
+ *  CHANGEEVERY of the base, never the same or neighbouring lines, so the
+ *  merge is clean.
+ *  @author Shixuan (Wayne) Li
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DiffBenchmark {
+
+    /** Lines in each text. */
+    @Param({"10000", "150000"})
+    public int lines;
+    /** About one line in this many differs between base and a side. */
+    @Param({"10", "1000"})
+    public int changeEvery;
+
+    /** Make the texts. */
+    @Setup(Level.Trial)
+    public void build() {
+        Random random = new Random(SEED);
+        StringBuilder base = new StringBuilder();
+        StringBuilder ours = new StringBuilder();
+        StringBuilder theirs = new StringBuilder();
+        for (int i = 0; i < lines; i += 1) {
+            String line = "line " + i + " " + random.nextLong() + "\n";
+            base.append(line);
+            boolean changed = random.nextInt(changeEvery) == 0;
+            ours.append(changed && i % 4 == 0 ? "ours " + line : line);
+            theirs.append(changed && i % 4 == 2 ? "theirs " + line : line);
+        }
+        _base = text(base);
+        _ours = text(ours);
+        _theirs = text(theirs);
+    }
+
+    /** Find the hunks between base and ours.
+     * @return -- number of hunks. */
+    @Benchmark
+    public int hunks() {
+        return Diff.hunks(_base, _ours).size();
+    }
+
+    /** Merge ours and theirs.
+     * @return -- if there was a conflict.
+     * @throws IOException -- never. */
+    @Benchmark
+    public boolean merge() throws IOException {
+        return Diff.merge(_base, _ours, _theirs,
+                OutputStream.nullOutputStream());
+    }
+
+    /** Write the unified diff between base and ours.
+     * @return -- bytes written.
+     * @throws IOException -- never. */
+    @Benchmark
+    public int unified() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Diff.unified(_base, _ours, out);
+        return out.size();
+    }
+
+    /** Lines of a string.
+     * @param content -- text
+     * @return -- its lines. */
+    private static Diff.Text text(StringBuilder content) {
+        return new Diff.Text(ByteBuffer.wrap(
+                content.toString().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /** Seed of the texts, so every run diffs the same ones. */
+    private static final long SEED = 61;
+    /** The common ancestor. */
+    private Diff.Text _base;
+    /** The current version. */
+    private Diff.Text _ours;
+    /** The given version. */
+    private Diff.Text _theirs;
+
+}
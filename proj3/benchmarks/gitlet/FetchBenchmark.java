@@ -0,0 +1,88 @@
+package gitlet;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmark of fetch. The remote is the repository with AHEAD more
+ *  commits on master; the local repository is put back before each
+ *  fetch, so every fetch copies those commits and their objects.
+ *  @author Shixuan (Wayne) Li
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FetchBenchmark {
+
+    /** Commits on master. */
+    @Param({"100"})
+    public int commits;
+    /** Commits the remote has that the local repository lacks. */
+    @Param({"10", "100"})
+    public int ahead;
+    /** Files tracked. */
+    @Param({"10"})
+    public int files;
+    /** Bytes per file. */
+    @Param({"1024", "65536"})
+    public int fileSize;
+
+    /** Build the local repository, and the remote from it. */
+    @Setup(Level.Trial)
+    public void build() {
+        Workspace.enter();
+        Workspace.build(commits, files, 0, fileSize);
+        Workspace.copy(GITLET, BASE);
+        for (int c = 0; c < ahead; c += 1) {
+            String name = Workspace.fileName(c % files);
+            Workspace.write(name, fileSize, commits + c);
+            Workspace.run("add", name);
+            Workspace.run("commit", "ahead " + c);
+        }
+        Workspace.copy(GITLET, REMOTE + "/" + GITLET);
+        Workspace.copy(BASE, GITLET);
+        Workspace.run("add-remote", "origin", REMOTE + "/" + GITLET);
+        Workspace.copy(GITLET, BASE);
+    }
+
+    /** Delete the repositories. */
+    @TearDown(Level.Trial)
+    public void clear() {
+        Workspace.clear();
+    }
+
+    /** Put the local repository back as it was before any fetch. */
+    @Setup(Level.Invocation)
+    public void reset() {
+        Workspace.copy(BASE, GITLET);
+    }
+
+    /** Fetch master from the remote. */
+    @Benchmark
+    public void fetch() {
+        Workspace.run("fetch", "origin", "master");
+    }
+
+    /** The repository directory. */
+    private static final String GITLET = ".gitlet";
+    /** Copy of the local repository before fetching. */
+    private static final String BASE = ".base";
+    /** Working directory of the remote. */
+    private static final String REMOTE = "remote";
+
+}
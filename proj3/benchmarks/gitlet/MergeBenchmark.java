@@ -0,0 +1,89 @@
+package gitlet;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmark of merge. Before each merge, master and a new branch each
+ *  get a commit of their own, changing different files, so the merge
+ *  finds a split point one commit back on both sides and has no
+ *  conflict.
+ *  @author Shixuan (Wayne) Li
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MergeBenchmark {
+
+    /** Commits on master. */
+    @Param({"100"})
+    public int commits;
+    /** Files tracked. */
+    @Param({"10", "100"})
+    public int files;
+    /** Branches besides master. */
+    @Param({"2"})
+    public int branches;
+    /** Bytes per file. */
+    @Param({"1024", "65536"})
+    public int fileSize;
+
+    /** Build the repository. */
+    @Setup(Level.Trial)
+    public void build() {
+        Workspace.enter();
+        Workspace.build(commits, files, branches, fileSize);
+        _round = commits;
+    }
+
+    /** Delete the repository. */
+    @TearDown(Level.Trial)
+    public void clear() {
+        Workspace.clear();
+    }
+
+    /** Make a branch to merge: a commit adding a file on the branch and
+     *  one changing a file on master. */
+    @Setup(Level.Invocation)
+    public void diverge() {
+        _round += 1;
+        String branch = "merge" + _round;
+        String added = "merge" + _round + ".txt";
+        Workspace.run("branch", branch);
+        Workspace.run("checkout", branch);
+        Workspace.write(added, fileSize, _round);
+        Workspace.run("add", added);
+        Workspace.run("commit", "add " + added);
+        Workspace.run("checkout", "master");
+        String changed = Workspace.fileName(_round % files);
+        Workspace.write(changed, fileSize, _round);
+        Workspace.run("add", changed);
+        Workspace.run("commit", "change " + changed);
+    }
+
+    /** Merge the branch into master. */
+    @Benchmark
+    public void merge() {
+        Workspace.run("merge", "merge" + _round);
+    }
+
+    /** Version of the last change, past those of the build, since
+     *  content committed once is not staged again. */
+    private int _round;
+
+}
@@ -0,0 +1,140 @@
+package gitlet;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Benchmarks of the everyday commands on a repository of COMMITS
+ *  commits, FILES files of FILESIZE bytes and BRANCHES branches. Add
+ *  restages every file, so its scores against FILES and FILESIZE give
+ *  the throughput of hashing and staging.
+ *  @author Shixuan (Wayne) Li
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RepositoryBenchmark {
+
+    /** The repository, built once per run. */
+    @State(Scope.Benchmark)
+    public static class Repository {
+
+        /** Commits on master. */
+        @Param({"100"})
+        public int commits;
+        /** Files tracked. */
+        @Param({"10", "100"})
+        public int files;
+        /** Branches besides master. */
+        @Param({"2"})
+        public int branches;
+        /** Bytes per file. */
+        @Param({"1024", "65536"})
+        public int fileSize;
+
+        /** Build the repository. */
+        @Setup(Level.Trial)
+        public void build() {
+            Workspace.enter();
+            Workspace.build(commits, files, branches, fileSize);
+            _round = commits;
+        }
+
+        /** Delete the repository. */
+        @TearDown(Level.Trial)
+        public void clear() {
+            Workspace.clear();
+        }
+
+        /** Version of the last change, past those of the build, since
+         *  content committed once is not staged again. */
+        int _round;
+        /** If the working directory is on the first branch. */
+        boolean _onBranch;
+    }
+
+    /** Every file changed, before add. */
+    @State(Scope.Benchmark)
+    public static class Changed {
+
+        /** Change every file.
+         * @param repo -- the repository. */
+        @Setup(Level.Invocation)
+        public void change(Repository repo) {
+            repo._round += 1;
+            for (int i = 0; i < repo.files; i += 1) {
+                Workspace.write(Workspace.fileName(i), repo.fileSize,
+                        repo._round);
+            }
+        }
+    }
+
+    /** One file changed and staged, before commit. */
+    @State(Scope.Benchmark)
+    public static class Staged {
+
+        /** Change and stage one file.
+         * @param repo -- the repository. */
+        @Setup(Level.Invocation)
+        public void stage(Repository repo) {
+            repo._round += 1;
+            String name = Workspace.fileName(repo._round % repo.files);
+            Workspace.write(name, repo.fileSize, repo._round);
+            Workspace.run("add", name);
+        }
+    }
+
+    /** Stage every file.
+     * @param repo -- the repository
+     * @param changed -- changes made. */
+    @Benchmark
+    public void add(Repository repo, Changed changed) {
+        Workspace.run("add", "*.txt");
+    }
+
+    /** Commit one staged file.
+     * @param repo -- the repository
+     * @param staged -- file staged. */
+    @Benchmark
+    public void commit(Repository repo, Staged staged) {
+        Workspace.run("commit", "round " + repo._round);
+    }
+
+    /** Show the status of the working directory.
+     * @param repo -- the repository. */
+    @Benchmark
+    public void status(Repository repo) {
+        Workspace.run("status");
+    }
+
+    /** Show the history of master.
+     * @param repo -- the repository. */
+    @Benchmark
+    public void log(Repository repo) {
+        Workspace.run("log");
+    }
+
+    /** Check out the first branch, or master when on it.
+     * @param repo -- the repository. */
+    @Benchmark
+    public void checkout(Repository repo) {
+        repo._onBranch = !repo._onBranch;
+        Workspace.run("checkout",
+                repo._onBranch ? Workspace.branchName(0) : "master");
+    }
+
+}
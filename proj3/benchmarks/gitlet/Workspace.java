@@ -0,0 +1,164 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static gitlet.GitletOperator.*;
+
+/** Synthetic repositories for the benchmarks. Gitlet works on the current
+ *  directory, so the benchmarks run from a scratch directory, named by
+ *  the gitlet.bench.dir property, and build their repositories in it.
+ *  Commands run through Main.run, as the daemon runs them, after the
+ *  cached repository is forgotten, so each one pays what a fresh process
+ *  pays apart from starting the JVM.
+ *  @author Shixuan (Wayne) Li
+ */
+final class Workspace {
+
+    /** Not to be made. */
+    private Workspace() {
+    }
+
+    /** Make sure the benchmarks run from their scratch directory, since
+     *  everything in it is deleted, and silence what commands print. */
+    static void enter() {
+        try {
+            String dir = System.getProperty(DIR_PROPERTY);
+            if (dir == null || !new File(dir).getCanonicalFile()
+                    .equals(new File(".").getCanonicalFile())) {
+                throw new IllegalStateException("Run the benchmarks from "
+                        + "the directory named by -D" + DIR_PROPERTY);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        clear();
+    }
+
+    /** Delete everything in the scratch directory. */
+    static void clear() {
+        File[] files = new File(".").listFiles();
+        if (files != null) {
+            for (File file : files) {
+                deleteFile(file);
+            }
+        }
+        forgetRepository();
+    }
+
+    /** Run a gitlet command on the repository in the scratch directory.
+     * @param args -- command line. */
+    static void run(String... args) {
+        forgetRepository();
+        Main.run(args);
+    }
+
+    /** Build a repository: FILES files committed once, then changed one
+     *  at a time until there are COMMITS commits on master, then BRANCHES
+     *  branches, each with one commit of its own changing the first file.
+     *  The working directory is left at the head of master.
+     * @param commits -- commits on master, the initial one aside
+     * @param files -- number of files
+     * @param branches -- number of branches besides master
+     * @param size -- bytes per file. */
+    static void build(int commits, int files, int branches, int size) {
+        run("init");
+        for (int i = 0; i < files; i += 1) {
+            write(fileName(i), size, 0);
+        }
+        run("add", "*" + SUFFIX);
+        run("commit", "files");
+        for (int c = 1; c < commits; c += 1) {
+            String name = fileName(c % files);
+            write(name, size, c);
+            run("add", name);
+            run("commit", "change " + c);
+        }
+        for (int b = 0; b < branches; b += 1) {
+            run("branch", branchName(b));
+            run("checkout", branchName(b));
+            write(fileName(0), size, -1 - b);
+            run("add", fileName(0));
+            run("commit", "on " + branchName(b));
+            run("checkout", "master");
+        }
+    }
+
+    /** Write a text file of SIZE bytes, whose lines depend on VERSION so
+     *  that versions share most of their lines.
+     * @param name -- file name
+     * @param size -- bytes
+     * @param version -- version of the content. */
+    static void write(String name, int size, int version) {
+        StringBuilder text = new StringBuilder(size + LINE);
+        for (int line = 0; text.length() < size; line += 1) {
+            int changed = line % CHANGE_EVERY == 0 ? version : 0;
+            text.append(name).append(" line ").append(line).append(" v")
+                    .append(changed).append('\n');
+        }
+        text.setLength(size);
+        try {
+            Files.write(new File(name).toPath(),
+                    text.toString().getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Write a binary file of SIZE random bytes, the same for a SEED.
+     * @param name -- file name
+     * @param size -- bytes
+     * @param seed -- seed of the bytes. */
+    static void writeRandom(String name, int size, long seed) {
+        byte[] content = new byte[size];
+        new Random(seed).nextBytes(content);
+        try {
+            Files.write(new File(name).toPath(), content);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** Copy a directory, replacing the target and making its parents.
+     * @param source -- directory to copy
+     * @param target -- where to copy it. */
+    static void copy(String source, String target) {
+        File to = new File(target);
+        if (to.exists()) {
+            deleteFile(to);
+        }
+        to.getAbsoluteFile().getParentFile().mkdirs();
+        copyFiles(new File(source), to);
+        forgetRepository();
+    }
+
+    /** Name of a file of the repository.
+     * @param i -- file number
+     * @return -- file name. */
+    static String fileName(int i) {
+        return "file" + i + SUFFIX;
+    }
+
+    /** Name of a branch of the repository.
+     * @param i -- branch number
+     * @return -- branch name. */
+    static String branchName(int i) {
+        return "branch" + i;
+    }
+
+    /** Property naming the scratch directory. */
+    static final String DIR_PROPERTY = "gitlet.bench.dir";
+    /** Suffix of the files of the repository. */
+    private static final String SUFFIX = ".txt";
+    /** Longest line, in bytes. */
+    private static final int LINE = 64;
+    /** One line in this many changes between versions of a file. */
+    private static final int CHANGE_EVERY = 50;
+
+}
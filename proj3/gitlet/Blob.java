@@ -2,34 +2,50 @@ package gitlet;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.nio.file.StandardCopyOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
 
 import static gitlet.Doc.*;
+import static gitlet.Utils.*;
 import static gitlet.Staged.*;
 import static gitlet.GitletOperator.*;
 
-/** Blob Area in .gitlet/Blobs.
+/** Blob Area. Committed files live in the pack; blobs of repositories
+ *  not yet migrated may still sit loose in .gitlet/Blobs. A packed blob
+ *  is kept as is, deflated, or as a deflated delta against an earlier
+ *  blob of the same name, whichever is smallest. With chunking on, large
+ *  files are instead cut into chunks by content, and the blob lists
+ *  their hashes. Chunks are objects of the pack of their own, so a chunk
+ *  shared by many files or versions is stored and sent once.
  *  @author Shixuan (Wayne) Li
  */
 class Blob {
 
-    /** Get the blob area ready. */
+    /** Get the blob area ready. Nothing is read until asked for. */
     Blob() {
-        _files = getAllDocs();
-    }
-
-    /** Get all files in Blobs.
-     * @return -- All file hashes. */
-    private ArrayList<String> getAllDocs() {
-        ArrayList<String> result = new ArrayList<>();
-        File[] files = getFilesInFile(PATH_BLOBS);
-        if (files != null) {
-            ArrayList<String> hashs = getAllDirectorysFrom(files);
-            result.addAll(hashs);
-        }
-        return result;
     }
 
     /** Init in init mode.*/
@@ -37,28 +53,28 @@ class Blob {
         new File(PATH_BLOBS).mkdir();
     }
 
-    /** Check and add from Staged Area.
+    /** Check and add from Staged Area. The staged copy is packed, in
+     *  chunks if it is large and chunking is on, and streamed into the
+     *  pack rather than tried as a delta past DELTA_SIZE. It is left in
+     *  Staged, for the caller to drop once the pack is flushed.
      * @param hash -- doc to be added.*/
     void add(String hash) {
-        try {
-            Files.move(new File(PATH_STAGED + hash).toPath(),
-                    new File(PATH_BLOBS + hash).toPath(),
-                    StandardCopyOption.REPLACE_EXISTING);
-        } catch (IOException e) {
-            e.printStackTrace();
+        String[] name = readFrom(PATH_STAGED + hash + "/" + NAME_FOLDER);
+        if (name == null) {
+            return;
+        }
+        File content = new File(PATH_STAGED + hash + CONTENT_FOLDER + name[0]);
+        if (content.length() >= CHUNKED_SIZE
+                && new File(PATH_CHUNKING).exists()) {
+            myPack().batch();
+            myPack().write(hash, storeChunked(name[0], content, myPack()),
+                    name[0]);
+            myPack().flush();
+        } else if (content.length() > DELTA_SIZE) {
+            storeStreamed(hash, name[0], content, myPack());
+        } else {
+            myPack().write(hash, store(name[0], content, myPack()), name[0]);
         }
-    }
-
-    /* **********************************
-     *          Access-Methods          *
-     ********************************** */
-
-    /** Get my files' hashes.
-     * @return -- Get all file hashes. */
-    ArrayList<String> myFiles() {
-        ArrayList<String> result = new ArrayList<>();
-        result.addAll(_files);
-        return result;
     }
 
     /* **********************************
@@ -69,13 +85,13 @@ class Blob {
      * @param hash -- input.
      * @return -- name of the hash. */
     String getNameOf(String hash) {
-        if (hasFileHash(hash)) {
-            String[] name = readFrom(PATH_BLOBS + hash + "/" + NAME_FOLDER);
-            if (name != null) {
-                return name[0];
-            } else {
-                return null;
-            }
+        ByteBuffer packed = myPack().find(hash);
+        if (packed != null) {
+            return decodeName(packed);
+        }
+        String[] name = readFrom(PATH_BLOBS + hash + "/" + NAME_FOLDER);
+        if (name != null) {
+            return name[0];
         } else {
             return null;
         }
@@ -85,27 +101,621 @@ class Blob {
      * @param fileHash -- input.
      * @return -- check result. */
     boolean hasFileHash(String fileHash) {
-        for (String hash : getAllDirectorysFrom(PATH_BLOBS)) {
-            if (hash.equals(fileHash)) {
-                return true;
-            }
-        }
-        return false;
+        return myPack().mayHold(fileHash) && (myPack().contains(fileHash)
+                || new File(PATH_BLOBS + fileHash).isDirectory());
     }
 
     /** Checkout file based on filename to WorkingArea. Assume exist.
      * @param hash -- file hash. */
     void checkOutByHash(String hash) {
-        File source = new File(PATH_BLOBS + hash
-                + CONTENT_FOLDER + getNameOf(hash));
-        File target = new File(PATH_WORKING + getNameOf(hash));
-        if (target.exists()) {
-            target.delete();
+        checkOut(hash, getNameOf(hash));
+    }
+
+    /** Turn the working files tracked as FROM into those of TO, touching
+     *  only the ones that differ. Files of FROM that TO lacks are
+     *  deleted, and a file of TO is written unless its working copy
+     *  already holds the blob, which the stat cache mostly tells without
+     *  reading the file. The files are written in parallel, once
+     *  looking each up has mapped the pack. A file that cannot be
+     *  written fails the command, before anything is touched if a
+     *  directory is in its way.
+     * @param from -- blob hashes of the files tracked now, by name
+     * @param to -- blob hashes of the files to check out, by name. */
+    void checkOut(Map<String, String> from, Map<String, String> to) {
+        ArrayList<String[]> writes = new ArrayList<>();
+        for (Map.Entry<String, String> file : to.entrySet()) {
+            String name = file.getKey(), hash = file.getValue();
+            if (!new File(PATH_WORKING + name).isFile()
+                    || !hash.equals(myStatCache().hashOf(name))) {
+                if (new File(PATH_WORKING + name).isDirectory()) {
+                    throw new GitletException("Cannot check out " + name
+                            + ".");
+                }
+                myPack().find(hash);
+                writes.add(new String[] {hash, name});
+            }
+        }
+        int result = 0;
+        for (String name : from.keySet()) {
+            File file = new File(PATH_WORKING + name);
+            if (!to.containsKey(name) && file.exists()) {
+                deleteFromWorking(name);
+                result += 1;
+            }
+        }
+        if (writes.size() == 1) {
+            checkOut(writes.get(0)[0], writes.get(0)[1]);
+        } else if (writes.size() > 1) {
+            int threads = Math.min(writes.size(),
+                    Runtime.getRuntime().availableProcessors());
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            try {
+                ArrayList<Callable<Void>> tasks = new ArrayList<>();
+                for (String[] write : writes) {
+                    tasks.add(() -> {
+                        checkOut(write[0], write[1]);
+                        return null;
+                    });
+                }
+                for (Future<Void> task : pool.invokeAll(tasks)) {
+                    task.get();
+                }
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof GitletException) {
+                    throw (GitletException) e.getCause();
+                }
+                throw new GitletException(e.getCause().toString());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new GitletException("Checkout was interrupted.");
+            } finally {
+                pool.shutdown();
+            }
+        }
+        Trace.rewritten(result + writes.size());
+    }
+
+    /** Write a blob into a working file, replacing its content. Fails
+     *  the command if the file cannot be written.
+     * @param hash -- file hash
+     * @param name -- file name. */
+    private void checkOut(String hash, String name) {
+        File target = workingFile(name);
+        ByteBuffer packed = myPack().find(hash);
+        if (packed == null) {
+            File source = new File(PATH_BLOBS + hash + CONTENT_FOLDER + name);
+            copyFiles(source, target);
+            return;
+        }
+        if (kindOf(packed) == PLAIN) {
+            skipName(packed);
+            try (FileChannel out = new FileOutputStream(target).getChannel()) {
+                while (packed.hasRemaining()) {
+                    out.write(packed);
+                }
+            } catch (IOException e) {
+                throw new GitletException("Cannot check out " + name + ".");
+            }
+            return;
+        }
+        try (OutputStream out = new BufferedOutputStream(
+                new FileOutputStream(target), BUFFER_SIZE)) {
+            writeContent(myPack(), packed, out);
+        } catch (IOException e) {
+            throw new GitletException("Cannot check out " + name + ".");
+        }
+    }
+
+    /** Read the content of a blob line by line, as readFrom does.
+     * @param hash -- file hash
+     * @return -- lines of the content. */
+    String[] readLinesOf(String hash) {
+        ArrayList<String> lines = new ArrayList<>();
+        try (BufferedReader br = new BufferedReader(new InputStreamReader(
+                new ByteArrayInputStream(contentOf(hash)),
+                StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                lines.add(line);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return doListToStrings(lines);
+    }
+
+    /** Get the content of a blob. Assume exist.
+     * @param hash -- file hash
+     * @return -- content of the file. */
+    byte[] contentOf(String hash) {
+        ByteBuffer packed = myPack().find(hash);
+        if (packed == null) {
+            return readContents(new File(PATH_BLOBS + hash
+                    + CONTENT_FOLDER + getNameOf(hash)));
+        }
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        try {
+            writeContent(myPack(), packed, result);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        return result.toByteArray();
+    }
+
+    /** Get the content of a blob as a buffer, without reading it onto
+     *  the heap when it is kept as is. Assume exist.
+     * @param hash -- file hash
+     * @return -- content of the file. */
+    ByteBuffer bufferOf(String hash) {
+        if (!myPack().contains(hash)) {
+            return mapFile(new File(PATH_BLOBS + hash
+                    + CONTENT_FOLDER + getNameOf(hash)));
+        }
+        try {
+            return contentBuffer(myPack(), hash);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return ByteBuffer.allocate(0);
+        }
+    }
+
+    /* **********************************
+     *         Static-Utilities         *
+     ********************************** */
+
+    /** Copy a blob of one repository into a pack.
+     * @param home -- working directory of the source, "" for local
+     * @param target -- pack to copy into
+     * @param hash -- file hash. */
+    static void copyBlob(String home, Pack target, String hash) {
+        if (target.contains(hash)) {
+            return;
+        }
+        byte[] packed = packedBlobOf(home, hash);
+        if (packed == null) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(packed);
+        if (kindOf(buffer) == DELTA) {
+            copyBlob(home, target, baseOf(buffer));
+        } else if (kindOf(buffer) == CHUNKED) {
+            Pack source = new Pack(home);
+            for (String chunk : chunksOf(buffer)) {
+                if (!target.contains(chunk)) {
+                    target.write(Pack.CHUNK, chunk, source.read(chunk));
+                }
+            }
+        }
+        target.write(hash, packed, decodeName(buffer));
+    }
+
+    /** Get the blob a packed blob is stored as a delta against.
+     * @param pack -- pack holding the blob
+     * @param hash -- blob hash
+     * @return -- hash of the base, or null if not a delta. */
+    static String deltaBaseOf(Pack pack, String hash) {
+        ByteBuffer packed = pack.find(hash);
+        if (packed == null || kindOf(packed) != DELTA) {
+            return null;
+        }
+        return baseOf(packed);
+    }
+
+    /** Get the chunks a packed blob is cut into.
+     * @param pack -- pack holding the blob
+     * @param hash -- blob hash
+     * @return -- hashes of the chunks, none if not chunked. */
+    static ArrayList<String> chunksOf(Pack pack, String hash) {
+        ByteBuffer packed = pack.find(hash);
+        if (packed == null || kindOf(packed) != CHUNKED) {
+            return new ArrayList<>();
+        }
+        return chunksOf(packed);
+    }
+
+    /** Get a blob as it is stored in the pack of a repository.
+     * @param home -- working directory of the repository, "" for local
+     * @param hash -- file hash
+     * @return -- packed blob, or null if the repository lacks it. */
+    private static byte[] packedBlobOf(String home, String hash) {
+        byte[] packed = new Pack(home).read(hash);
+        if (packed != null) {
+            return packed;
+        }
+        String[] name = readFrom(home + PATH_BLOBS + hash + "/" + NAME_FOLDER);
+        if (name == null) {
+            return null;
+        }
+        return store(name[0], new File(home + PATH_BLOBS
+                + hash + CONTENT_FOLDER + name[0]), null);
+    }
+
+    /** Pack a file the smallest way: as is, deflated, or as a delta
+     *  against the latest blob of the same name in BASES, as long as
+     *  that blob is not itself too deep in a chain of deltas.
+     * @param name -- file name
+     * @param content -- file content
+     * @param bases -- pack to find a base in, null for no delta
+     * @return -- packed blob. */
+    private static byte[] store(String name, File content, Pack bases) {
+        try (FileChannel channel = FileChannel.open(content.toPath(),
+                StandardOpenOption.READ)) {
+            ByteBuffer target = channel.map(FileChannel.MapMode.READ_ONLY,
+                    0, channel.size());
+            ByteArrayOutputStream deflated = header(name, DEFLATED);
+            try (DeflaterOutputStream out =
+                         new DeflaterOutputStream(deflated)) {
+                copy(target.duplicate(), out);
+            }
+            byte[] result = deflated.toByteArray();
+            String base = bases == null ? null : latestNamed(bases, name);
+            if (base != null && depthOf(bases.find(base)) < MAX_DEPTH) {
+                ByteArrayOutputStream delta = header(name, DELTA);
+                delta.write(depthOf(bases.find(base)) + 1);
+                delta.write(Pack.toRaw(base));
+                try (DeflaterOutputStream out =
+                             new DeflaterOutputStream(delta)) {
+                    Delta.encode(contentBuffer(bases, base), target, out);
+                }
+                if (delta.size() < result.length) {
+                    result = delta.toByteArray();
+                }
+            }
+            if (Short.BYTES + name.getBytes(StandardCharsets.UTF_8).length
+                    + target.limit() <= result.length) {
+                ByteArrayOutputStream plain = header(name, PLAIN);
+                copy(target, plain);
+                result = plain.toByteArray();
+            }
+            return result;
+        } catch (IOException e) {
+            throw new GitletException("Cannot pack " + content.getPath());
+        }
+    }
+
+    /** Pack a large file straight into PACK, as is or deflated, but
+     *  never as a delta, so none of its forms is held in memory. It is
+     *  deflated if its first SAMPLE_SIZE bytes deflate.
+     * @param hash -- file hash
+     * @param name -- file name
+     * @param content -- file content
+     * @param pack -- pack to write into. */
+    private static void storeStreamed(String hash, String name,
+                                      File content, Pack pack) {
+        byte[] sample = new byte[(int) Math.min(content.length(),
+                SAMPLE_SIZE)];
+        try (InputStream in = new FileInputStream(content)) {
+            in.readNBytes(sample, 0, sample.length);
+        } catch (IOException e) {
+            throw new GitletException("Cannot pack " + content.getPath());
+        }
+        boolean deflate = deflatedLength(sample) < sample.length;
+        pack.write(hash, name, out -> {
+            header(name, deflate ? DEFLATED : PLAIN).writeTo(out);
+            try (InputStream in = new FileInputStream(content)) {
+                if (!deflate) {
+                    in.transferTo(out);
+                    return;
+                }
+                Deflater deflater = new Deflater();
+                try {
+                    DeflaterOutputStream deflated = new DeflaterOutputStream(
+                            out, deflater, BUFFER_SIZE);
+                    in.transferTo(deflated);
+                    deflated.finish();
+                } finally {
+                    deflater.end();
+                }
+            }
+        });
+    }
+
+    /** Get how long some bytes are once deflated.
+     * @param data -- the bytes
+     * @return -- deflated length. */
+    private static long deflatedLength(byte[] data) {
+        Deflater deflater = new Deflater();
+        try {
+            deflater.setInput(data);
+            deflater.finish();
+            byte[] buf = new byte[BUFFER_SIZE];
+            while (!deflater.finished()) {
+                deflater.deflate(buf);
+            }
+            return deflater.getBytesWritten();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /** Pack a file as the list of its chunks, writing the chunks PACK
+     *  lacks into it, each deflated unless that makes it larger.
+     * @param name -- file name
+     * @param content -- file content
+     * @param pack -- pack to write the chunks into
+     * @return -- packed blob. */
+    private static byte[] storeChunked(String name, File content,
+                                       Pack pack) {
+        Deflater deflater = new Deflater();
+        try (FileChannel channel = FileChannel.open(content.toPath(),
+                StandardOpenOption.READ)) {
+            ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY,
+                    0, channel.size());
+            ByteArrayOutputStream result = header(name, CHUNKED);
+            int length;
+            for (int start = 0; (length = Chunker.next(data, start)) > 0;
+                 start += length) {
+                byte[] chunk = new byte[length];
+                data.get(start, chunk);
+                String hash = sha1(chunk);
+                result.write(Pack.toRaw(hash));
+                if (!pack.contains(hash)) {
+                    pack.write(Pack.CHUNK, hash, packChunk(chunk, deflater));
+                }
+            }
+            return result.toByteArray();
+        } catch (IOException e) {
+            throw new GitletException("Cannot pack " + content.getPath());
+        } finally {
+            deflater.end();
         }
-        copyFiles(source, target);
     }
 
-    /** All files inside Staged Area. */
-    private ArrayList<String> _files = new ArrayList<>();
+    /** Pack a chunk: its kind, then its bytes as is or deflated.
+     * @param chunk -- content of the chunk
+     * @param deflater -- deflater to reuse
+     * @return -- packed chunk.
+     * @throws IOException -- never, from writing into memory. */
+    private static byte[] packChunk(byte[] chunk, Deflater deflater)
+            throws IOException {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        result.write(DEFLATED);
+        deflater.reset();
+        try (DeflaterOutputStream out =
+                     new DeflaterOutputStream(result, deflater)) {
+            out.write(chunk);
+        }
+        if (result.size() <= chunk.length + 1) {
+            return result.toByteArray();
+        }
+        byte[] plain = new byte[chunk.length + 1];
+        plain[0] = PLAIN;
+        System.arraycopy(chunk, 0, plain, 1, chunk.length);
+        return plain;
+    }
+
+    /** Get the blob of a name written last into a pack.
+     * @param pack -- pack
+     * @param name -- file name
+     * @return -- blob hash, or null if none. */
+    private static String latestNamed(Pack pack, String name) {
+        String result = null;
+        long latest = -1;
+        for (String hash : pack.blobsNamed(name)) {
+            long offset = pack.offsetOf(hash);
+            if (offset > latest) {
+                latest = offset;
+                result = hash;
+            }
+        }
+        return result;
+    }
+
+    /** Stream the content of a packed blob to OUT. Deltas are applied
+     *  against their base, which is mapped rather than read into memory,
+     *  and chunks are written one after the other.
+     * @param pack -- pack holding the blob and its bases
+     * @param packed -- packed blob
+     * @param out -- where the content goes
+     * @throws IOException -- if OUT fails. */
+    private static void writeContent(Pack pack, ByteBuffer packed,
+                                     OutputStream out) throws IOException {
+        int kind = kindOf(packed);
+        if (kind == DELTA) {
+            ByteBuffer base = contentBuffer(pack, baseOf(packed));
+            skipName(packed);
+            packed.position(packed.position() + 1 + Pack.HASH_LENGTH);
+            Delta.apply(base, inflated(packed), out);
+            return;
+        }
+        if (kind == CHUNKED) {
+            for (String hash : chunksOf(packed)) {
+                ByteBuffer chunk = pack.find(hash);
+                if (chunk.get() == DEFLATED) {
+                    try (InputStream in = inflated(chunk)) {
+                        in.transferTo(out);
+                    }
+                } else {
+                    copy(chunk, out);
+                }
+            }
+            return;
+        }
+        skipName(packed);
+        if (kind == DEFLATED) {
+            inflated(packed).transferTo(out);
+        } else {
+            copy(packed, out);
+        }
+    }
+
+    /** Get the content of a packed blob as a buffer: the slice of the
+     *  pack if kept as is, otherwise a mapped temporary file.
+     * @param pack -- pack holding the blob
+     * @param hash -- blob hash
+     * @return -- content buffer.
+     * @throws IOException -- if the temporary file fails. */
+    private static ByteBuffer contentBuffer(Pack pack, String hash)
+            throws IOException {
+        ByteBuffer packed = pack.find(hash);
+        if (kindOf(packed) == PLAIN) {
+            skipName(packed);
+            return packed.slice();
+        }
+        Path temp = Files.createTempFile("gitlet", ".blob");
+        try {
+            try (OutputStream out = new BufferedOutputStream(
+                    Files.newOutputStream(temp), BUFFER_SIZE)) {
+                writeContent(pack, packed, out);
+            }
+            try (FileChannel channel = FileChannel.open(temp,
+                    StandardOpenOption.READ)) {
+                return channel.map(FileChannel.MapMode.READ_ONLY,
+                        0, channel.size());
+            }
+        } finally {
+            Files.delete(temp);
+        }
+    }
+
+    /** Stream view of the deflated rest of PACKED.
+     * @param packed -- packed blob, positioned on deflated data
+     * @return -- inflated stream. */
+    private static InputStream inflated(ByteBuffer packed) {
+        return new InflaterInputStream(new BufferInputStream(packed));
+    }
+
+    /** Write the rest of BUFFER to OUT.
+     * @param buffer -- content
+     * @param out -- where the content goes
+     * @throws IOException -- if OUT fails. */
+    private static void copy(ByteBuffer buffer, OutputStream out)
+            throws IOException {
+        byte[] buf = new byte[Math.min(buffer.remaining(), BUFFER_SIZE)];
+        while (buffer.hasRemaining()) {
+            int chunk = Math.min(buffer.remaining(), buf.length);
+            buffer.get(buf, 0, chunk);
+            out.write(buf, 0, chunk);
+        }
+    }
+
+    /** Start a packed blob: its kind and the length of its name, then
+     *  its name.
+     * @param name -- file name
+     * @param kind -- PLAIN, DEFLATED, DELTA or CHUNKED
+     * @return -- stream holding the header. */
+    private static ByteArrayOutputStream header(String name, int kind) {
+        byte[] rawName = name.getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        int head = (kind << KIND_SHIFT) | rawName.length;
+        result.write(head >>> 8);
+        result.write(head);
+        result.write(rawName, 0, rawName.length);
+        return result;
+    }
+
+    /** Get how a packed blob is kept.
+     * @param packed -- packed blob
+     * @return -- PLAIN, DEFLATED, DELTA or CHUNKED. */
+    private static int kindOf(ByteBuffer packed) {
+        return (packed.getShort(packed.position()) & 0xffff) >>> KIND_SHIFT;
+    }
+
+    /** Get how many deltas deep a packed blob is.
+     * @param packed -- packed blob
+     * @return -- 0 unless a delta. */
+    private static int depthOf(ByteBuffer packed) {
+        if (kindOf(packed) != DELTA) {
+            return 0;
+        }
+        ByteBuffer rest = packed.duplicate();
+        skipName(rest);
+        return rest.get();
+    }
+
+    /** Get the base of a delta.
+     * @param packed -- packed blob, a delta
+     * @return -- hash of the base. */
+    private static String baseOf(ByteBuffer packed) {
+        ByteBuffer rest = packed.duplicate();
+        skipName(rest);
+        rest.get();
+        byte[] raw = new byte[Pack.HASH_LENGTH];
+        rest.get(raw);
+        return Pack.toHex(raw);
+    }
+
+    /** Get the chunks of a chunked blob: the hashes after its name.
+     * @param packed -- packed blob, chunked, left untouched
+     * @return -- hashes of the chunks, in order. */
+    private static ArrayList<String> chunksOf(ByteBuffer packed) {
+        ByteBuffer rest = packed.duplicate();
+        skipName(rest);
+        ArrayList<String> result = new ArrayList<>();
+        byte[] raw = new byte[Pack.HASH_LENGTH];
+        while (rest.hasRemaining()) {
+            rest.get(raw);
+            result.add(Pack.toHex(raw));
+        }
+        return result;
+    }
+
+    /** Read the name off a packed blob, leaving PACKED untouched.
+     * @param packed -- packed blob
+     * @return -- file name. */
+    private static String decodeName(ByteBuffer packed) {
+        ByteBuffer name = packed.duplicate();
+        byte[] rawName = new byte[name.getShort() & NAME_MASK];
+        name.get(rawName);
+        return new String(rawName, StandardCharsets.UTF_8);
+    }
+
+    /** Move PACKED past the kind and name, onto the content.
+     * @param packed -- packed blob. */
+    private static void skipName(ByteBuffer packed) {
+        int length = packed.getShort() & NAME_MASK;
+        packed.position(packed.position() + length);
+    }
+
+    /** Stream reading the rest of a buffer. */
+    private static class BufferInputStream extends InputStream {
+
+        /** Read what is left of BUFFER.
+         * @param buffer -- content. */
+        BufferInputStream(ByteBuffer buffer) {
+            _buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            if (!_buffer.hasRemaining()) {
+                return -1;
+            }
+            return _buffer.get() & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (!_buffer.hasRemaining()) {
+                return -1;
+            }
+            int chunk = Math.min(len, _buffer.remaining());
+            _buffer.get(b, off, chunk);
+            return chunk;
+        }
+
+        /** Content being read. */
+        private final ByteBuffer _buffer;
+
+    }
+
+    /** Ways a packed blob is kept, stored in the top bits of the length
+     *  of its name. A packed chunk starts with PLAIN or DEFLATED. */
+    private static final int PLAIN = 0, DEFLATED = 1, DELTA = 2, CHUNKED = 3;
+    /** Position of the kind in the length of the name. */
+    private static final int KIND_SHIFT = 14;
+    /** Bits of the length of the name. */
+    private static final int NAME_MASK = (1 << KIND_SHIFT) - 1;
+    /** Smallest file cut into chunks when chunking is on. */
+    private static final long CHUNKED_SIZE = 4 * Chunker.MAX_SIZE;
+    /** Bytes of the largest file tried as a delta and packed in memory;
+     *  larger ones are streamed into the pack. */
+    private static final long DELTA_SIZE = 1 << 23;
+    /** Bytes of a large file deflated to tell if it deflates. */
+    private static final int SAMPLE_SIZE = 1 << 20;
+    /** Longest chain of deltas. */
+    private static final int MAX_DEPTH = 8;
+    /** Bytes moved at a time. */
+    private static final int BUFFER_SIZE = 1 << 16;
 
 }
@@ -0,0 +1,71 @@
+package gitlet;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/** Content-defined chunking, after FastCDC. A gear hash rolls over the
+ *  last 64 bytes and a chunk ends where its top bits are all zero, so
+ *  the boundaries follow the content: an edit only moves the boundaries
+ *  near it, and the chunks elsewhere stay the same. Below the average
+ *  size a stricter mask is used and above it a looser one, which keeps
+ *  chunk sizes close to the average. No chunk is cut before MIN_SIZE,
+ *  which is also skipped without hashing, nor grows past MAX_SIZE.
+ *  @author Shixuan (Wayne) Li
+ */
+final class Chunker {
+
+    /** Not to be made. */
+    private Chunker() {
+    }
+
+    /** Get the length of the chunk starting at START.
+     * @param data -- content, read with absolute gets
+     * @param start -- where the chunk starts
+     * @return -- length of the chunk, 0 at the end of DATA. */
+    static int next(ByteBuffer data, int start) {
+        int length = Math.min(data.limit() - start, MAX_SIZE);
+        if (length <= MIN_SIZE) {
+            return length;
+        }
+        int normal = Math.min(length, AVERAGE_SIZE);
+        long hash = 0;
+        int i = MIN_SIZE;
+        for (; i < normal; i += 1) {
+            hash = (hash << 1) + GEAR[data.get(start + i) & 0xff];
+            if ((hash & STRICT_MASK) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < length; i += 1) {
+            hash = (hash << 1) + GEAR[data.get(start + i) & 0xff];
+            if ((hash & LOOSE_MASK) == 0) {
+                return i + 1;
+            }
+        }
+        return length;
+    }
+
+    /** Fewest bytes in a chunk but the last. */
+    static final int MIN_SIZE = 1 << 12;
+    /** Bytes a chunk aims for. */
+    static final int AVERAGE_SIZE = 1 << 14;
+    /** Most bytes in a chunk. */
+    static final int MAX_SIZE = 1 << 16;
+    /** Mask checked below the average size: two bits more than the
+     *  average calls for. */
+    private static final long STRICT_MASK = -1L << (Long.SIZE - 16);
+    /** Mask checked past the average size: two bits fewer. */
+    private static final long LOOSE_MASK = -1L << (Long.SIZE - 12);
+    /** Seed of the gear table. Chunks of files already stored are only
+     *  found again if it never changes. */
+    private static final long SEED = 0x6769746c6574L;
+    /** Random value of each byte. */
+    private static final long[] GEAR = new long[256];
+    static {
+        Random random = new Random(SEED);
+        for (int i = 0; i < GEAR.length; i += 1) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+}
@@ -0,0 +1,161 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import static gitlet.GitletOperator.*;
+
+/** Garbage collection for "gc". Objects are marked from the commits of
+ *  every branch, the remote-tracking ones included, through parents,
+ *  trees, blobs, the bases of deltas and the chunks of chunked blobs.
+ *  Each object is visited once, so marking takes time linear in the
+ *  reachable objects. Everything else is swept: the pack is rewritten
+ *  with the marked objects only, loose commits and blobs nothing reaches
+ *  are deleted, and so are the copies an interrupted add left in Staged
+ *  and the temporary files an interrupted rewrite left in the pack. The
+ *  commit graph and message index are dropped, to be rebuilt over what
+ *  is left.
+ *  @author Shixuan (Wayne) Li
+ */
+class Collector {
+
+    /** A collector for the local repository. */
+    Collector() {
+        _marked = new HashSet<>();
+    }
+
+    /* **********************************
+     *              Marking             *
+     ********************************** */
+
+    /** Mark everything reachable from the branches. */
+    void mark() {
+        ArrayDeque<String> pending = new ArrayDeque<>();
+        for (String name : getAllDirectorysFrom(PATH_BRANCHES)) {
+            Branch branch = new Branch().restoreBranch(name);
+            pending.addAll(branch.myCommits());
+            if (branch.myHeadCommit() != null) {
+                pending.add(branch.myHeadCommit());
+            }
+        }
+        while (!pending.isEmpty()) {
+            String hash = pending.pop();
+            if (_marked.contains(hash) || !existCommit(hash)) {
+                continue;
+            }
+            _marked.add(hash);
+            Commit commit = new Commit().restoreCommit(hash);
+            if (commit.hasParents()) {
+                for (String parent : commit.myParents()) {
+                    pending.push(parent);
+                }
+            }
+            commit.myTree().mark(_marked);
+        }
+        ArrayList<String> blobs = new ArrayList<>();
+        for (String hash : _marked) {
+            if (myPack().typeOf(hash) == Pack.BLOB) {
+                blobs.add(hash);
+            }
+        }
+        for (String hash : blobs) {
+            _marked.addAll(Blob.chunksOf(myPack(), hash));
+            String base = Blob.deltaBaseOf(myPack(), hash);
+            while (base != null && _marked.add(base)) {
+                _marked.addAll(Blob.chunksOf(myPack(), base));
+                base = Blob.deltaBaseOf(myPack(), base);
+            }
+        }
+    }
+
+    /* **********************************
+     *             Sweeping             *
+     ********************************** */
+
+    /** Delete everything not marked and repack the rest. */
+    void sweep() {
+        File[] temps = new File(PATH_PACK).listFiles(
+                (directory, name) -> name.endsWith(".tmp"));
+        if (temps != null) {
+            for (File temp : temps) {
+                delete(temp);
+            }
+        }
+        for (String hash : getAllDirectorysFrom(PATH_COMMITS)) {
+            if (!_marked.contains(hash)) {
+                delete(new File(PATH_COMMITS + hash));
+            }
+        }
+        for (String hash : getAllDirectorysFrom(PATH_BLOBS)) {
+            if (!_marked.contains(hash)) {
+                delete(new File(PATH_BLOBS + hash));
+            }
+        }
+        for (File copy : myStaged().leftovers()) {
+            delete(copy);
+        }
+        long packBefore = packSize();
+        myPack().retain(_marked);
+        _bytes += Math.max(0, packBefore - packSize());
+        new File(PATH_PACK + CommitGraph.GRAPH_FILE).delete();
+        new File(PATH_PACK + CommitGraph.TAIL_FILE).delete();
+        new File(PATH_PACK + MessageIndex.INDEX_FILE).delete();
+        new File(PATH_PACK + MessageIndex.TAIL_FILE).delete();
+    }
+
+    /** Get the bytes freed: the files deleted, and what repacking took
+     *  off the pack and its indexes. The commit graph, message index and
+     *  Bloom filter are rebuilt whatever was swept, so they do not count.
+     * @return -- bytes reclaimed. */
+    long bytesReclaimed() {
+        return _bytes;
+    }
+
+    /** Get the files and directories deleted.
+     * @return -- inodes reclaimed. */
+    int inodesReclaimed() {
+        return _inodes;
+    }
+
+    /** Delete a file or directory, counting what it held.
+     * @param file -- File. */
+    private void delete(File file) {
+        count(file);
+        deleteFile(file);
+    }
+
+    /** Count the bytes and inodes under a file or directory.
+     * @param file -- File. */
+    private void count(File file) {
+        _inodes += 1;
+        File[] children = file.listFiles();
+        if (children == null) {
+            _bytes += file.length();
+            return;
+        }
+        for (File child : children) {
+            count(child);
+        }
+    }
+
+    /** Size of the pack and the indexes repacking rewrites.
+     * @return -- size in bytes. */
+    private static long packSize() {
+        long result = 0;
+        for (String name : new String[] {Pack.DATA_FILE, Pack.INDEX_FILE,
+                Pack.NAMES_FILE}) {
+            result += new File(PATH_PACK + name).length();
+        }
+        return result;
+    }
+
+    /** Hashes of the reachable objects. */
+    private HashSet<String> _marked;
+    /** Bytes of the files deleted and taken off the pack. */
+    private long _bytes;
+    /** Number of files and directories deleted. */
+    private int _inodes;
+
+}
@@ -14,9 +14,11 @@ class Command {
      *  programmer writes. */
     enum Type {
         /* Start-up state only. */
-        INIT, LOG, STATUS, CLEAN,
-        GLOBALLOG("global-log"),
-        ADD("add\\s+(\\S+)"),
+        INIT, STATUS, CLEAN, MIGRATE, GC,
+        LOG("log((?:\\s+\\S+)*)"),
+        GLOBALLOG("global-log((?:\\s+\\S+)*)"),
+        DIFF("diff((?:\\s+\\S+)*)"),
+        ADD("add((?:\\s+\\S+)+)"),
         RM("rm\\s+(\\S+)"),
         BRANCH("branch\\s+(\\S+)"),
         RMBRANCH("rm-branch\\s+(\\S+)"),
@@ -30,6 +32,7 @@ class Command {
         PUSH("push\\s+(\\S+)\\s+(\\S+)"),
         FETCH("fetch\\s+(\\S+)\\s+(\\S+)"),
         PULL("pull\\s+(\\S+)\\s+(\\S+)"),
+        CHUNKING("chunking\\s+(on|off)"),
         HELP("--help"),
         /* Special "commands" internally generated. */
         /** Syntax error in command. */
@@ -1,23 +1,32 @@
 package gitlet;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.util.Set;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Date;
 import java.util.Arrays;
-import java.util.HashSet;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.TreeMap;
 
 import static gitlet.Utils.*;
 import static gitlet.GitletOperator.*;
 
-/** Commit Area in .gitlet/Commit. Representing each commit.
+/** Commit Area in .gitlet/Commit. Representing each commit. A commit
+ *  names the tree of its files; commits made before trees list their
+ *  blobs instead, and get a tree built from them when asked. Packed
+ *  commits are binary: a version byte, a flag byte, then the parents,
+ *  the tree or blobs, the date and the message, with varint counts and
+ *  lengths and hashes as 20 raw bytes. Fields are decoded as they are
+ *  first asked for, so walking parents never decodes a message. Text
+ *  commits packed before, and loose ones, are still read.
  *  @author Shixuan (Wayne) Li
  */
 public class Commit {
 
     /** Only for init!. For convenience creating Commits. */
     Commit() {
-        _timeStamp = getDate(new Date());
     }
 
     /** Auto-search parent form Branches directory.
@@ -28,53 +37,31 @@ public class Commit {
         _parents = getParents();
         _timeStamp = getDate(new Date());
         _message = message;
-        _files = getFilesFromStaged();
-        _branches.add(getCurrentBranch());
+        _myTree = getTreeFromStaged();
+        _tree = _myTree.hash();
         _myHash = getHashName();
-        _myPath = PATH_COMMITS + _myHash + "/";
-        _isMerged = getIfMerged();
+        _isMerged = false;
     }
 
     /** Mostly for restore use, since can set all parameters.
      * @param id -- commit hash
      * @param parents -- parents
-     * @param message -- log message
-     * @param files -- contained files
-     * @param branches -- branches it got pointed to
      * @param timeStamp -- time the commit is created.
-     * @param isMerged -- if is a merged commit */
-    private Commit(String id, String[] parents, String[] timeStamp,
-                   String[] message, String[] files,
-                   String[] branches, boolean isMerged) {
-        _parents = parents;
-        _timeStamp = timeStamp[0];
-        _message = message[0];
-        _files = files;
-        _branches = new HashSet<>(Arrays.asList(branches));
-        _myHash = id;
-        _myPath = PATH_COMMITS + _myHash + "/";
-        _isMerged = isMerged;
-    }
-
-    /** Used to restore remote commit, since can set all parameters.
-     * @param myPath -- remote commit path
-     * @param id -- commit hash
-     * @param parents -- parents
      * @param message -- log message
-     * @param files -- contained files
-     * @param branches -- branches it got pointed to
-     * @param timeStamp -- time the commit is created.
+     * @param files -- contained files, null if it names a tree
+     * @param tree -- hash of its tree, null if it lists files
+     * @param source -- pack holding its tree
      * @param isMerged -- if is a merged commit */
-    private Commit(String myPath, String id, String[] parents,
-                   String[] timeStamp, String[] message, String[] files,
-                   String[] branches, boolean isMerged) {
+    private Commit(String id, String[] parents, String timeStamp,
+                   String message, String[] files, String tree,
+                   Pack source, boolean isMerged) {
         _parents = parents;
-        _timeStamp = timeStamp[0];
-        _message = message[0];
+        _timeStamp = timeStamp;
+        _message = message;
         _files = files;
-        _branches = new HashSet<>(Arrays.asList(branches));
+        _tree = tree;
+        _source = source;
         _myHash = id;
-        _myPath = myPath;
         _isMerged = isMerged;
     }
 
@@ -82,24 +69,11 @@ public class Commit {
      * @param id -- input
      * @return -- restored commit. */
     Commit restoreCommit(String id) {
-        String path = PATH_COMMITS + id + "/";
-        File file = new File(path);
-        if (file.exists()) {
-            String[] parents = readFrom(path + PARENT_FOLDER),
-                    timeStamp = readFrom(path + TIMESTAMP_FOLDER),
-                    message = readFrom(path + MESSAGE_FOLDER),
-                    files = readFrom(path + FILES_FOLDER),
-                    branches = readFrom(path + BRANCHES_FOLDER);
-            String[] isMergedString = readFrom(path + ISMERGED_FOLDER);
-            if (isMergedString == null) {
-                return null;
-            }
-            boolean isMerged = Boolean.parseBoolean(isMergedString[0]);
-            return new Commit(id, parents, timeStamp,
-                    message, files, branches, isMerged);
-        } else {
-            return null;
+        ByteBuffer content = myPack().find(id);
+        if (content != null) {
+            return decode(id, content, myPack());
         }
+        return restoreLooseCommit("", id);
     }
 
     /** Restore remote commit.
@@ -107,26 +81,152 @@ public class Commit {
      * @param remoteDirectory -- input
      * @return -- restored commit. */
     Commit restoreRemoteCommit(String remoteDirectory, String id) {
-        String path = remoteDirectory + PATH_COMMITS + id + "/";
+        return restoreRemoteCommit(remoteDirectory,
+                new Pack(remoteDirectory), id);
+    }
+
+    /** Restore remote commit, given the pack of the remote.
+     * @param remoteDirectory -- input
+     * @param remotePack -- pack of the remote
+     * @param id -- input
+     * @return -- restored commit. */
+    Commit restoreRemoteCommit(String remoteDirectory, Pack remotePack,
+                               String id) {
+        ByteBuffer content = remotePack.find(id);
+        if (content != null) {
+            return decode(id, content, remotePack);
+        }
+        return restoreLooseCommit(remoteDirectory, id);
+    }
+
+    /** Restore a commit kept in the old one-directory-per-commit layout.
+     * @param home -- working directory of the repository, "" for local
+     * @param id -- input
+     * @return -- restored commit. */
+    private Commit restoreLooseCommit(String home, String id) {
+        String path = home + PATH_COMMITS + id + "/";
         File file = new File(path);
         if (file.exists()) {
             String[] parents = readFrom(path + PARENT_FOLDER),
                     timeStamp = readFrom(path + TIMESTAMP_FOLDER),
                     message = readFrom(path + MESSAGE_FOLDER),
-                    files = readFrom(path + FILES_FOLDER),
-                    branches = readFrom(path + BRANCHES_FOLDER);
+                    files = readFrom(path + FILES_FOLDER);
             String[] isMergedString = readFrom(path + ISMERGED_FOLDER);
             if (isMergedString == null) {
                 return null;
             }
             boolean isMerged = Boolean.parseBoolean(isMergedString[0]);
-            return new Commit(path, id, parents, timeStamp,
-                    message, files, branches, isMerged);
+            Trace.commitRestored();
+            return new Commit(id, parents, timeStamp[0],
+                    message[0], files, null, null, isMerged);
         } else {
             return null;
         }
     }
 
+    /** Restore a packed commit from its content. Only the flags of a
+     *  binary commit are read here; decodeThrough reads the rest.
+     * @param id -- commit hash
+     * @param content -- content as written by encode(), or in text
+     * @param source -- pack holding the commit
+     * @return -- restored commit. */
+    static Commit decode(String id, ByteBuffer content, Pack source) {
+        if (!content.hasRemaining()
+                || content.get(content.position()) != BINARY) {
+            return decodeText(id, content, source);
+        }
+        ByteBuffer in = content.slice();
+        in.get();
+        byte flags = in.get();
+        Commit result = new Commit(id, null, null, null, null, null,
+                source, (flags & MERGED_FLAG) != 0);
+        result._hasTree = (flags & TREE_FLAG) != 0;
+        result._content = in;
+        Trace.commitRestored();
+        return result;
+    }
+
+    /** Restore a commit packed as text: one "key value" line per field,
+     *  a blank line, then the log message.
+     * @param id -- commit hash
+     * @param content -- content
+     * @param source -- pack holding the commit
+     * @return -- restored commit. */
+    private static Commit decodeText(String id, ByteBuffer content,
+                                     Pack source) {
+        byte[] bytes = new byte[content.remaining()];
+        content.get(bytes);
+        String[] lines = new String(bytes, StandardCharsets.UTF_8)
+                .split("\n", -1);
+        ArrayList<String> parents = new ArrayList<>();
+        ArrayList<String> files = new ArrayList<>();
+        String timeStamp = null, tree = null;
+        boolean isMerged = false;
+        int i;
+        for (i = 0; !lines[i].isEmpty(); i += 1) {
+            String value = lines[i].substring(lines[i].indexOf(' ') + 1);
+            if (lines[i].startsWith(PARENT_KEY)) {
+                parents.add(value);
+            } else if (lines[i].startsWith(FILE_KEY)) {
+                files.add(value);
+            } else if (lines[i].startsWith(TREE_KEY)) {
+                tree = value;
+            } else if (lines[i].startsWith(DATE_KEY)) {
+                timeStamp = value;
+            } else if (lines[i].startsWith(MERGED_KEY)) {
+                isMerged = Boolean.parseBoolean(value);
+            }
+        }
+        String message = String.join("\n",
+                Arrays.copyOfRange(lines, i + 1, lines.length));
+        Trace.commitRestored();
+        return new Commit(id, doListToStrings(parents), timeStamp, message,
+                tree == null ? doListToStrings(files) : null, tree,
+                source, isMerged);
+    }
+
+    /** Content of this commit as stored in the pack, in binary.
+     * @return -- encoded commit. */
+    byte[] encode() {
+        decodeThrough(MESSAGE_FIELD);
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        result.write(BINARY);
+        result.write((_isMerged ? MERGED_FLAG : 0)
+                | (_tree != null ? TREE_FLAG : 0));
+        writeHashes(result, _parents);
+        if (_tree != null) {
+            result.writeBytes(Pack.toRaw(_tree));
+        } else {
+            writeHashes(result, _files);
+        }
+        writeString(result, _timeStamp);
+        writeString(result, _message);
+        return result.toByteArray();
+    }
+
+    /** Decode the fields of a binary commit up to FIELD, in the order
+     *  they are stored. The buffer is dropped once all are decoded.
+     * @param field -- last field needed. */
+    private void decodeThrough(int field) {
+        while (_content != null && _decoded < field) {
+            _decoded += 1;
+            if (_decoded == PARENTS_FIELD) {
+                _parents = readHashes(_content);
+            } else if (_decoded == TREE_FIELD) {
+                if (_hasTree) {
+                    _tree = readHash(_content);
+                } else {
+                    _files = readHashes(_content);
+                }
+            } else if (_decoded == DATE_FIELD) {
+                _timeStamp = readString(_content);
+            } else {
+                _message = readString(_content);
+                _content = null;
+            }
+        }
+    }
+
     /** Initialized commit (the first commit). */
     public void init() {
         new File(PATH_COMMITS).mkdir();
@@ -134,9 +234,7 @@ public class Commit {
         _timeStamp = getDate(INIT_DATE);
         _message = INIT_MESSAGE;
         _files = null;
-        _branches.add(DEFAULT_BRANCH);
         _myHash = INIT_COMMIT;
-        _myPath = PATH_COMMITS + _myHash + "/";
         _isMerged = false;
         createCommit(true);
     }
@@ -156,31 +254,25 @@ public class Commit {
                 doSystemExit("No changes added to the commit.");
             }
 
-            String[] lastFiles = readFrom(PATH_COMMITS
-                    + currentHeadCommit() + "/" + FILES_FOLDER);
-
-            if (lastFiles == null || lastFiles.length <= 0) {
-                if (_files == null) {
-                    doSystemExit("No changes added to the commit.");
-                }
-            } else {
-                if (Arrays.equals(_files, lastFiles)) {
-                    doSystemExit("No changes added to the commit.");
-                }
+            Tree lastTree =
+                    new Commit().restoreCommit(currentHeadCommit()).myTree();
+            if (myTree().hash().equals(lastTree.hash())) {
+                doSystemExit("No changes added to the commit.");
             }
         }
 
-        new File(_myPath).mkdir();
-        writeInto(_myPath + PARENT_FOLDER, false, _parents);
-        writeInto(_myPath + TIMESTAMP_FOLDER, false, _timeStamp);
-        writeInto(_myPath + MESSAGE_FOLDER, false, _message);
-        writeInto(_myPath + FILES_FOLDER, false, _files);
-        writeInto(_myPath + BRANCHES_FOLDER, false, doSetToStrings(_branches));
-        writeInto(_myPath + ISMERGED_FOLDER, false, String.valueOf(_isMerged));
-
-        for (String fileHash : getAllDirectorysFrom(PATH_STAGED)) {
+        ArrayList<String> staged = getAllDirectorysFrom(PATH_STAGED);
+        myPack().batch();
+        for (String fileHash : staged) {
             addFileToBlobs(fileHash);
         }
+        storeTree(myPack());
+        myPack().write(Pack.COMMIT, _myHash, encode());
+        myPack().flush();
+        for (String fileHash : staged) {
+            myStaged().deleteByHash(fileHash);
+        }
+        myGraph().add(_myHash);
 
         clearRemovedInMyStaged();
         addCommitToMyBranch(_myHash);
@@ -192,26 +284,57 @@ public class Commit {
      ********************************** */
 
     /** Get my files.
-     * @return -- my files. */
+     * @return -- blob hashes of my files, null if there are none. */
     String[] myFiles() {
-        return _files;
+        decodeThrough(TREE_FIELD);
+        if (_files != null || _tree == null) {
+            return _files;
+        }
+        ArrayList<String> blobs = myTree().blobs();
+        return blobs.isEmpty() ? null : doListToStrings(blobs);
+    }
+
+    /** Get my tree, restoring it on first use. Commits listing their
+     *  files get one built from the names of their blobs.
+     * @return -- my tree. */
+    Tree myTree() {
+        if (_myTree == null) {
+            decodeThrough(TREE_FIELD);
+            if (_tree != null) {
+                _myTree = Tree.restore(_source, _tree);
+            } else {
+                TreeMap<String, String> files = new TreeMap<>();
+                if (_files != null) {
+                    for (String hash : _files) {
+                        files.put(myBlobs().getNameOf(hash), hash);
+                    }
+                }
+                _myTree = Tree.of(files);
+            }
+        }
+        return _myTree;
     }
 
-    /** Get my branches.
-     * @return my branches. */
-    Set<String> myBranches() {
-        return _branches;
+    /** Make sure a pack holds my tree, if I name one.
+     * @param pack -- pack to write into. */
+    void storeTree(Pack pack) {
+        decodeThrough(TREE_FIELD);
+        if (_tree != null) {
+            myTree().store(pack);
+        }
     }
 
     /** Check if this commit has parents.
      * @return -- check result. */
     boolean hasParents() {
+        decodeThrough(PARENTS_FIELD);
         return _parents != null && _parents.length > 0;
     }
 
     /** Get my parents.
      * @return -- my parents. */
     String[] myParents() {
+        decodeThrough(PARENTS_FIELD);
         return _parents;
     }
 
@@ -224,21 +347,17 @@ public class Commit {
     /** Get String format date.
      * @return -- my date. */
     String myDate() {
+        decodeThrough(DATE_FIELD);
         return _timeStamp;
     }
 
     /** Get String format message.
      * @return -- my message. */
     String myMessage() {
+        decodeThrough(MESSAGE_FIELD);
         return _message;
     }
 
-    /** Get String format path.
-     * @return -- my path. */
-    String myPath() {
-        return _myPath;
-    }
-
     /** Get if this commit is created by merging.
      * @return -- if is merged. */
     boolean isMerged() {
@@ -252,12 +371,7 @@ public class Commit {
     /** Get hash name for this commit.
      * @return -- created hash name for this commit. */
     private String getHashName() {
-        if (_files == null) {
-            return sha1(_parents.toString(), _timeStamp, _message);
-        } else {
-            return sha1(_parents.toString(), _timeStamp, _message,
-                    _files.toString());
-        }
+        return sha1(_parents.toString(), _timeStamp, _message, _tree);
     }
 
     /** Auto-detect the parent for this commit.
@@ -273,69 +387,42 @@ public class Commit {
         return DATE_FORMAT.format(date);
     }
 
-    /** Read file and get if isMerged.
-     * @return -- Check result. */
-    private boolean getIfMerged() {
-        String[] isMerged = readFrom(_myPath + ISMERGED_FOLDER);
-        return isMerged != null && Boolean.parseBoolean(isMerged[0]);
-    }
-
-    /** Auto-collect file hashes in staged area.
+    /** Auto-collect files in staged area: the parent's tree with the
+     *  staged files put in and the removed ones taken out. Only the
+     *  changed names are looked at.
      * @return -- applied to get files that need to be commited. */
-    private String[] getFilesFromStaged() {
-        ArrayList<String> files = new ArrayList<>();
-        String[] parentfiles = readFrom(PATH_COMMITS
-                + currentHeadCommit() + "/" + FILES_FOLDER);
-        if (parentfiles != null) {
-            for (String parentFile : parentfiles) {
-                String parentFileName = myBlobs().getNameOf(parentFile);
-                if (!myStaged().existFileNameInRemoved(parentFileName)
-                        && !myStaged().hasFileName(parentFileName)) {
-                    files.add(parentFile);
-                }
-            }
-        }
+    private Tree getTreeFromStaged() {
+        TreeMap<String, String> changes = new TreeMap<>();
         for (String stagedFile : getAllDirectorysFrom(PATH_STAGED)) {
-            String stagedFileName = myStaged().getNameByHash(stagedFile);
-            if (!myStaged().existFileNameInRemoved(stagedFileName)) {
-                files.add(stagedFile);
-            }
+            changes.put(myStaged().getNameByHash(stagedFile), stagedFile);
         }
-        if (files.size() <= 0) {
-            return null;
+        for (String removed : readFrom(Staged.REMOVED_NAMES)) {
+            changes.put(removed, null);
         }
-        return doListToStrings(files);
+        return new Commit().restoreCommit(currentHeadCommit()).myTree()
+                .with(changes);
     }
 
     /** Get the hash of the file in this commit by its name. Assume exist.
      * @param filename -- file name
      * @return -- hash of the file. */
     String getHashByName(String filename) {
-        String[] hashs = readFrom(_myPath + FILES_FOLDER);
-        for (String hash : hashs) {
-            if (myBlobs().hasFileHash(hash)) {
-                String name = myBlobs().getNameOf(hash);
-                if (name.equals(filename)) {
-                    return hash;
-                }
-            }
-        }
-        return null;
+        return myTree().hashOf(filename);
     }
 
-    /** Change the commit's attribute to an merged commit. */
+    /** Change the commit's attribute to an merged commit.
+     *  Packed commits are immutable, so call before createCommit. */
     void tagAsMerged() {
         _isMerged = true;
-        writeInto(_myPath + ISMERGED_FOLDER, false, String.valueOf(true));
     }
 
-    /** Add parent branch to this commit.
+    /** Add parent branch to this commit. Call before createCommit.
      * @param branch -- name of the branch. */
     void addParent(String branch) {
+        decodeThrough(PARENTS_FIELD);
         ArrayList<String> currentParents = doStringsToList(_parents);
         currentParents.add(branch);
         _parents = doListToStrings(currentParents);
-        writeInto(_myPath + PARENT_FOLDER, true, branch);
     }
 
     /* **********************************
@@ -346,51 +433,100 @@ public class Commit {
      * @param filename -- file name.
      * @return -- check result. */
     boolean containsFileName(String filename) {
-        String[] hashs = readFrom(_myPath + FILES_FOLDER);
-        if (hashs == null) {
-            return false;
-        }
-        for (String hash : hashs) {
-            if (myBlobs().hasFileHash(hash)) {
-                String name = myBlobs().getNameOf(hash);
-                if (name.equals(filename)) {
-                    return true;
-                }
-            }
-        }
-        return false;
+        return myTree().contains(filename);
     }
 
     /** Check if contains file with filehash.
      * @param filehash -- file hash.
      * @return -- check result. */
     boolean containsFileHash(String filehash) {
-        String[] hashs = readFrom(_myPath + FILES_FOLDER);
-        if (hashs == null) {
-            return false;
+        if (_blobs == null) {
+            _blobs = new HashSet<>(myTree().files().values());
+        }
+        return _blobs.contains(filehash);
+    }
+
+    /* **********************************
+     *             Encoding             *
+     ********************************** */
+
+    /** Write an unsigned varint: seven bits a byte, low bits first, the
+     *  top bit set on every byte but the last.
+     * @param out -- output
+     * @param value -- non-negative value. */
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~VARINT_BITS) != 0) {
+            out.write((value & VARINT_BITS) | VARINT_MORE);
+            value >>>= VARINT_SHIFT;
         }
-        for (String hash : hashs) {
-            if (hash.equals(filehash)) {
-                return true;
+        out.write(value);
+    }
+
+    /** Read an unsigned varint written by writeVarint.
+     * @param in -- input
+     * @return -- value. */
+    private static int readVarint(ByteBuffer in) {
+        int result = 0;
+        for (int shift = 0;; shift += VARINT_SHIFT) {
+            byte b = in.get();
+            result |= (b & VARINT_BITS) << shift;
+            if ((b & VARINT_MORE) == 0) {
+                return result;
             }
         }
-        return false;
     }
 
-    /** Check if contains branch with branchname.
-     * @param branchname -- branch name
-     * @return -- check result. */
-    boolean containsBranch(String branchname) {
-        String[] branchs = readFrom(_myPath + BRANCHES_FOLDER);
-        if (branchs == null) {
-            return false;
+    /** Write hashes, count first.
+     * @param out -- output
+     * @param hashes -- hex hashes, null for none. */
+    private static void writeHashes(ByteArrayOutputStream out,
+                                    String[] hashes) {
+        if (hashes == null) {
+            writeVarint(out, 0);
+            return;
         }
-        for (String branch : branchs) {
-            if (branch.equals(branchname)) {
-                return true;
-            }
+        writeVarint(out, hashes.length);
+        for (String hash : hashes) {
+            out.writeBytes(Pack.toRaw(hash));
+        }
+    }
+
+    /** Read a raw hash.
+     * @param in -- input
+     * @return -- hex hash. */
+    private static String readHash(ByteBuffer in) {
+        byte[] raw = new byte[Pack.HASH_LENGTH];
+        in.get(raw);
+        return Pack.toHex(raw);
+    }
+
+    /** Read hashes written by writeHashes.
+     * @param in -- input
+     * @return -- hex hashes. */
+    private static String[] readHashes(ByteBuffer in) {
+        String[] result = new String[readVarint(in)];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = readHash(in);
         }
-        return false;
+        return result;
+    }
+
+    /** Write a string, its UTF-8 length first.
+     * @param out -- output
+     * @param str -- string. */
+    private static void writeString(ByteArrayOutputStream out, String str) {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.writeBytes(bytes);
+    }
+
+    /** Read a string written by writeString.
+     * @param in -- input
+     * @return -- string. */
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[readVarint(in)];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
     }
 
     /** Hash name of the commit. */
@@ -401,14 +537,25 @@ public class Commit {
     private String _timeStamp;
     /** Log message with the commit. */
     private String _message;
-    /** Hashes of the tracked files. */
+    /** Hashes of the tracked files, for commits made before trees. */
     private String[] _files;
-    /** Branches that exist at this commit. */
-    private Set<String> _branches = new HashSet<>();
-    /** The path of this commit. */
-    private String _myPath;
+    /** Hash of the tree of tracked files, null for commits made before
+     *  trees. */
+    private String _tree;
+    /** My tree, null until used. */
+    private Tree _myTree;
+    /** Pack holding my tree. */
+    private Pack _source;
+    /** Hashes of the tracked files, null until used. */
+    private HashSet<String> _blobs;
     /** If this committed is created by merging. */
     private boolean _isMerged = false;
+    /** Fields of a binary commit not yet decoded, null once all are. */
+    private ByteBuffer _content;
+    /** Number of fields of _content decoded. */
+    private int _decoded;
+    /** If the binary commit names a tree rather than listing blobs. */
+    private boolean _hasTree;
 
     /** Initial Date. */
     static final Date INIT_DATE = new Date(0);
@@ -419,7 +566,25 @@ public class Commit {
             MESSAGE_FOLDER = "message.txt",
             TIMESTAMP_FOLDER = "timeStamp.txt",
             FILES_FOLDER = "files.txt",
-            BRANCHES_FOLDER = "branches.txt",
             ISMERGED_FOLDER = "isMerged.txt";
+    /** First byte of a binary commit; text ones start with a letter. */
+    private static final byte BINARY = 1;
+    /** Flags of a binary commit. */
+    private static final int MERGED_FLAG = 1, TREE_FLAG = 2;
+    /** Fields of a binary commit, in the order they are stored. */
+    private static final int PARENTS_FIELD = 1, TREE_FIELD = 2,
+            DATE_FIELD = 3, MESSAGE_FIELD = 4;
+    /** Bits of a varint byte holding the value. */
+    private static final int VARINT_BITS = 0x7f;
+    /** Bit of a varint byte set if more bytes follow. */
+    private static final int VARINT_MORE = 0x80;
+    /** Bits of the value per varint byte. */
+    private static final int VARINT_SHIFT = 7;
+    /** Keys of the fields of text commits. */
+    private static final String PARENT_KEY = "parent ",
+            FILE_KEY = "file ",
+            TREE_KEY = "tree ",
+            DATE_KEY = "date ",
+            MERGED_KEY = "merged ";
 
 }
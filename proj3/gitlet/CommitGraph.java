@@ -0,0 +1,616 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.FileOutputStream;
+import java.io.DataOutputStream;
+import java.io.BufferedOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.PriorityQueue;
+
+import static gitlet.GitletOperator.*;
+
+/** The commit graph. Parents and generation numbers of every commit are
+ *  persisted in .gitlet/Pack/commit-graph, sorted by hash and
+ *  memory-mapped, so walks and merge-base searches only touch the
+ *  commits they visit. A commit's index is its position in that file;
+ *  commits newer than the file get indices after it. New commits are
+ *  appended to commit-graph.tail, with their parents by hash, and the
+ *  tail is only merged into the sorted file once it grows past a part
+ *  of it, so a commit costs one short append. Commit objects themselves
+ *  are restored from the pack at most once per run.
+ *  @author Shixuan (Wayne) Li
+ */
+class CommitGraph {
+
+    /** Index of a commit.
+     * @param hash -- commit hash
+     * @return -- index of the commit, -1 if it does not exist. */
+    int indexOf(String hash) {
+        Integer index = _indices.get(hash);
+        if (index != null) {
+            return index;
+        }
+        int position = search(hash);
+        if (position >= 0) {
+            _indices.put(hash, position);
+            return position;
+        }
+        if (!_tailRead) {
+            readTail();
+            return indexOf(hash);
+        }
+        Commit commit = new Commit().restoreCommit(hash);
+        if (commit == null) {
+            return -1;
+        }
+        int result = fileSize() + _extras.size();
+        _extras.add(hash);
+        _indices.put(hash, result);
+        _commits.put(result, commit);
+        return result;
+    }
+
+    /** Get a commit by hash.
+     * @param hash -- commit hash
+     * @return -- the commit, null if it does not exist. */
+    Commit get(String hash) {
+        int index = indexOf(hash);
+        if (index < 0) {
+            return null;
+        }
+        return commit(index);
+    }
+
+    /** Get a commit by index.
+     * @param index -- commit index
+     * @return -- the commit. */
+    Commit commit(int index) {
+        Commit result = _commits.get(index);
+        if (result == null) {
+            result = new Commit().restoreCommit(hash(index));
+            _commits.put(index, result);
+        }
+        return result;
+    }
+
+    /** Get the hash of a commit by index.
+     * @param index -- commit index
+     * @return -- commit hash. */
+    String hash(int index) {
+        if (index >= fileSize()) {
+            return _extras.get(index - fileSize());
+        }
+        byte[] raw = new byte[Pack.HASH_LENGTH];
+        ByteBuffer file = file().duplicate();
+        file.position(entryPosition(index));
+        file.get(raw);
+        return Pack.toHex(raw);
+    }
+
+    /** Get the parents of a commit as indices, first parent first.
+     * @param index -- commit index
+     * @return -- indices of the parents. */
+    int[] parents(int index) {
+        int[] result = _parents.get(index);
+        if (result != null) {
+            return result;
+        }
+        if (index < fileSize()) {
+            int position = entryPosition(index) + Pack.HASH_LENGTH;
+            int first = file().getInt(position + Integer.BYTES);
+            int second = file().getInt(position + 2 * Integer.BYTES);
+            if (first < 0) {
+                result = new int[0];
+            } else if (second < 0) {
+                result = new int[] {first};
+            } else {
+                result = new int[] {first, second};
+            }
+        } else if (_tailParents.containsKey(index)) {
+            String[] hashes = _tailParents.get(index);
+            result = new int[hashes.length];
+            for (int i = 0; i < hashes.length; i += 1) {
+                result[i] = indexOf(hashes[i]);
+            }
+        } else {
+            Commit commit = commit(index);
+            if (!commit.hasParents()) {
+                result = new int[0];
+            } else {
+                String[] hashes = commit.myParents();
+                result = new int[hashes.length];
+                for (int i = 0; i < hashes.length; i += 1) {
+                    result[i] = indexOf(hashes[i]);
+                }
+            }
+        }
+        _parents.put(index, result);
+        return result;
+    }
+
+    /** Get the first parent of a commit.
+     * @param index -- commit index
+     * @return -- index of the first parent, -1 for the initial commit. */
+    int firstParent(int index) {
+        int[] parents = parents(index);
+        if (parents.length == 0) {
+            return -1;
+        }
+        return parents[0];
+    }
+
+    /** Generation number of a commit: 1 for the initial commit, otherwise
+     *  one more than the largest generation among its parents.
+     * @param index -- commit index
+     * @return -- generation number. */
+    int generation(int index) {
+        if (index < fileSize()) {
+            return file().getInt(entryPosition(index) + Pack.HASH_LENGTH);
+        }
+        ArrayList<Integer> stack = new ArrayList<>();
+        stack.add(index);
+        while (!stack.isEmpty()) {
+            int top = stack.get(stack.size() - 1);
+            if (knownGeneration(top) > 0) {
+                stack.remove(stack.size() - 1);
+                continue;
+            }
+            int result = 1;
+            boolean ready = true;
+            for (int parent : parents(top)) {
+                int generation = knownGeneration(parent);
+                if (generation == 0) {
+                    stack.add(parent);
+                    ready = false;
+                } else {
+                    result = Math.max(result, generation + 1);
+                }
+            }
+            if (ready) {
+                _generations.put(top, result);
+                stack.remove(stack.size() - 1);
+            }
+        }
+        return _generations.get(index);
+    }
+
+    /** Generation number if already known without walking.
+     * @param index -- commit index
+     * @return -- generation number, 0 if not known yet. */
+    private int knownGeneration(int index) {
+        if (index < fileSize()) {
+            return generation(index);
+        }
+        Integer result = _generations.get(index);
+        return result == null ? 0 : result;
+    }
+
+    /** Lowest common ancestor of two commits. Walks down from both in
+     *  order of decreasing generation, painting each commit with the
+     *  side(s) it is reachable from, and stops as soon as every pending
+     *  commit is below a common ancestor already found, which a count of
+     *  the pending commits not yet stale tells. When there are
+     *  several best candidates (criss-cross merges), the one with the
+     *  highest generation wins.
+     * @param hash1 -- first commit
+     * @param hash2 -- second commit
+     * @return -- hash of the merge base, null if unrelated. */
+    String mergeBase(String hash1, String hash2) {
+        int one = indexOf(hash1), two = indexOf(hash2);
+        if (one == two) {
+            return hash1;
+        }
+        HashMap<Integer, Integer> paint = new HashMap<>();
+        PriorityQueue<Integer> queue = new PriorityQueue<>((a, b) -> {
+            int cmp = Integer.compare(generation(b), generation(a));
+            return cmp != 0 ? cmp : Integer.compare(a, b);
+        });
+        paint.put(one, SIDE_ONE);
+        paint.put(two, SIDE_TWO);
+        queue.add(one);
+        queue.add(two);
+        int active = 2;
+        ArrayList<Integer> candidates = new ArrayList<>();
+        while (active > 0) {
+            int commit = queue.poll();
+            int flags = paint.get(commit);
+            if ((flags & STALE) == 0) {
+                active -= 1;
+            }
+            if ((flags & BOTH_SIDES) == BOTH_SIDES
+                    && (flags & STALE) == 0) {
+                candidates.add(commit);
+                flags |= STALE;
+                paint.put(commit, flags);
+            }
+            for (int parent : parents(commit)) {
+                Integer old = paint.get(parent);
+                int merged = (old == null ? 0 : old) | flags;
+                if (old == null || old != merged) {
+                    paint.put(parent, merged);
+                    if (queue.remove(parent) && (old & STALE) == 0) {
+                        active -= 1;
+                    }
+                    queue.add(parent);
+                    if ((merged & STALE) == 0) {
+                        active += 1;
+                    }
+                }
+            }
+        }
+        int best = -1;
+        for (int candidate : candidates) {
+            if (!isBelowCandidate(candidate, candidates)
+                    && (best < 0
+                    || generation(candidate) > generation(best))) {
+                best = candidate;
+            }
+        }
+        return best < 0 ? null : hash(best);
+    }
+
+    /** Check if a candidate is an ancestor of another candidate.
+     * @param candidate -- candidate commit
+     * @param candidates -- all candidates
+     * @return -- check result. */
+    private boolean isBelowCandidate(int candidate,
+                                     ArrayList<Integer> candidates) {
+        for (int other : candidates) {
+            if (other != candidate && isAncestor(candidate, other)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Check if ANCESTOR is reachable from DESCENDANT. Generation numbers
+     *  cut off every branch that has already gone below ANCESTOR.
+     * @param ancestor -- possible ancestor
+     * @param descendant -- possible descendant
+     * @return -- check result. */
+    boolean isAncestor(int ancestor, int descendant) {
+        int floor = generation(ancestor);
+        ArrayList<Integer> stack = new ArrayList<>();
+        HashMap<Integer, Boolean> seen = new HashMap<>();
+        stack.add(descendant);
+        while (!stack.isEmpty()) {
+            int commit = stack.remove(stack.size() - 1);
+            if (commit == ancestor) {
+                return true;
+            }
+            if (seen.put(commit, true) != null
+                    || generation(commit) <= floor) {
+                continue;
+            }
+            for (int parent : parents(commit)) {
+                stack.add(parent);
+            }
+        }
+        return false;
+    }
+
+    /** Load every commit in the repository.
+     * @return -- hashes of all commits, in listing order. */
+    ArrayList<String> all() {
+        if (_all == null) {
+            _all = myPack().hashesOf(Pack.COMMIT);
+            _all.addAll(getAllDirectorysFrom(PATH_COMMITS));
+            for (String hash : _all) {
+                indexOf(hash);
+            }
+        }
+        return _all;
+    }
+
+    /** Record a new commit, and every commit it reaches that the graph
+     *  lacks, by appending them to the tail. The tail is merged into the
+     *  sorted file once it holds more than a part of it.
+     * @param hash -- hash of the new commit. */
+    void add(String hash) {
+        generation(indexOf(hash));
+        ArrayList<Commit> added = new ArrayList<>();
+        int end = fileSize() + _extras.size();
+        for (int i = fileSize() + _tailSize; i < end; i += 1) {
+            parents(i);
+            added.add(commit(i));
+        }
+        if (added.isEmpty()) {
+            return;
+        }
+        if (_tailSize + added.size()
+                > Math.max(TAIL_MIN, fileSize() / TAIL_PART)) {
+            closeExtras();
+            writeFile(fileSize() + _extras.size());
+        } else {
+            appendTail(end);
+        }
+        updateMessages(added);
+        invalidate();
+    }
+
+    /** Rewrite the commit-graph file so it covers every commit, then
+     *  forget the cached commits. Called when commits are added other
+     *  than by commit, by fetch, or once gc has deleted the file. */
+    void rebuild() {
+        all();
+        closeExtras();
+        int size = fileSize() + _extras.size();
+        ArrayList<Commit> added = new ArrayList<>();
+        for (int i = fileSize(); i < size; i += 1) {
+            added.add(commit(i));
+        }
+        writeFile(size);
+        updateMessages(added);
+        invalidate();
+    }
+
+    /** Resolve the parents of every commit not in the file, so that they
+     *  have indices too. */
+    private void closeExtras() {
+        for (int i = fileSize(); i < fileSize() + _extras.size(); i += 1) {
+            parents(i);
+            generation(i);
+        }
+    }
+
+    /** Write the commit-graph file over the first SIZE commits, which
+     *  must include the parents of each, and delete the tail.
+     * @param size -- number of commits. */
+    private void writeFile(int size) {
+        ArrayList<String> hashes = new ArrayList<>();
+        for (int i = 0; i < size; i += 1) {
+            hashes.add(hash(i));
+        }
+        Collections.sort(hashes);
+        HashMap<Integer, Integer> positions = new HashMap<>();
+        for (int i = 0; i < size; i += 1) {
+            positions.put(indexOf(hashes.get(i)), i);
+        }
+        File temp = new File(PATH_PACK + GRAPH_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.write(MAGIC);
+            out.writeInt(size);
+            for (String hash : hashes) {
+                int index = indexOf(hash);
+                int[] parents = parents(index);
+                out.write(Pack.toRaw(hash));
+                out.writeInt(generation(index));
+                for (int i = 0; i < 2; i += 1) {
+                    if (i < parents.length) {
+                        out.writeInt(positions.get(parents[i]));
+                    } else {
+                        out.writeInt(-1);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        try {
+            Files.move(temp.toPath(), new File(PATH_PACK + GRAPH_FILE)
+                    .toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        new File(PATH_PACK + TAIL_FILE).delete();
+    }
+
+    /** Bring the message index up to the commits being written: add
+     *  them, or index every commit if the index is missing.
+     * @param added -- commits new to the graph. */
+    private void updateMessages(ArrayList<Commit> added) {
+        MessageIndex messages = myMessages();
+        if (messages.exists()) {
+            messages.add(added);
+            return;
+        }
+        ArrayList<Commit> commits = new ArrayList<>();
+        for (String hash : all()) {
+            commits.add(get(hash));
+        }
+        messages.rebuild(commits);
+    }
+
+    /** Forget everything cached, including the mapped file. */
+    void invalidate() {
+        _indices.clear();
+        _commits.clear();
+        _parents.clear();
+        _generations.clear();
+        _extras.clear();
+        _tailParents.clear();
+        _tailSize = 0;
+        _tailRead = false;
+        _all = null;
+        _file = null;
+    }
+
+    /* **********************************
+     *           File-Handling          *
+     ********************************** */
+
+    /** Binary search the commit-graph file for a hash.
+     * @param hash -- commit hash
+     * @return -- position in the file, -1 if not in it. */
+    private int search(String hash) {
+        byte[] key = Pack.toRaw(hash);
+        ByteBuffer file = file();
+        int low = 0, high = fileSize() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = 0, position = entryPosition(mid);
+            for (int i = 0; i < Pack.HASH_LENGTH && cmp == 0; i += 1) {
+                cmp = Integer.compare(file.get(position + i) & 0xff,
+                        key[i] & 0xff);
+            }
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    /** Read the tail: each commit appended since the file was written,
+     *  with its generation and parents. Commits the file already holds,
+     *  left by a rewrite cut short, and an entry cut short are skipped. */
+    private void readTail() {
+        _tailRead = true;
+        File tail = new File(PATH_PACK + TAIL_FILE);
+        if (!tail.exists()) {
+            return;
+        }
+        ByteBuffer entries;
+        try {
+            entries = ByteBuffer.wrap(Files.readAllBytes(tail.toPath()));
+        } catch (IOException e) {
+            throw new GitletException("Cannot read commit-graph tail");
+        }
+        byte[] raw = new byte[Pack.HASH_LENGTH];
+        while (entries.remaining() >= TAIL_ENTRY_LENGTH) {
+            entries.get(raw);
+            String hash = Pack.toHex(raw);
+            int generation = entries.getInt();
+            ArrayList<String> parents = new ArrayList<>();
+            for (int i = 0; i < 2; i += 1) {
+                entries.get(raw);
+                if (!Arrays.equals(raw, NO_PARENT)) {
+                    parents.add(Pack.toHex(raw));
+                }
+            }
+            if (search(hash) >= 0 || _indices.containsKey(hash)) {
+                continue;
+            }
+            int index = fileSize() + _extras.size();
+            _extras.add(hash);
+            _indices.put(hash, index);
+            _generations.put(index, generation);
+            _tailParents.put(index, parents.toArray(new String[0]));
+            _tailSize += 1;
+        }
+    }
+
+    /** Append the commits past the tail, up to index END, to the tail,
+     *  first cutting off an entry a crash left short.
+     * @param end -- index after the last commit to append. */
+    private void appendTail(int end) {
+        ByteBuffer entries = ByteBuffer.allocate(
+                (end - fileSize() - _tailSize) * TAIL_ENTRY_LENGTH);
+        for (int i = fileSize() + _tailSize; i < end; i += 1) {
+            int[] parents = parents(i);
+            entries.put(Pack.toRaw(hash(i))).putInt(generation(i));
+            for (int j = 0; j < 2; j += 1) {
+                entries.put(j < parents.length
+                        ? Pack.toRaw(hash(parents[j])) : NO_PARENT);
+            }
+        }
+        entries.flip();
+        try (FileChannel out = FileChannel.open(
+                new File(PATH_PACK + TAIL_FILE).toPath(),
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+            long size = out.size() - out.size() % TAIL_ENTRY_LENGTH;
+            out.truncate(size);
+            out.position(size);
+            while (entries.hasRemaining()) {
+                out.write(entries);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** Number of commits in the commit-graph file.
+     * @return -- commit count. */
+    private int fileSize() {
+        return file().getInt(MAGIC.length);
+    }
+
+    /** Position of an entry in the commit-graph file.
+     * @param entry -- entry number
+     * @return -- byte position. */
+    private static int entryPosition(int entry) {
+        return HEADER_LENGTH + entry * ENTRY_LENGTH;
+    }
+
+    /** The memory-mapped commit-graph file, mapped on first use.
+     * @return -- file buffer. */
+    private ByteBuffer file() {
+        if (_file == null) {
+            File graph = new File(PATH_PACK + GRAPH_FILE);
+            if (!graph.exists()) {
+                _file = ByteBuffer.allocate(HEADER_LENGTH);
+                _file.put(MAGIC).putInt(0);
+            } else {
+                try (FileChannel channel = FileChannel.open(graph.toPath(),
+                        StandardOpenOption.READ)) {
+                    _file = channel.map(FileChannel.MapMode.READ_ONLY,
+                            0, channel.size());
+                } catch (IOException e) {
+                    throw new GitletException("Cannot read commit-graph");
+                }
+            }
+        }
+        return _file;
+    }
+
+    /** Commit hash to index. */
+    private HashMap<String, Integer> _indices = new HashMap<>();
+    /** Restored commits by index. */
+    private HashMap<Integer, Commit> _commits = new HashMap<>();
+    /** Resolved parent indices by index. */
+    private HashMap<Integer, int[]> _parents = new HashMap<>();
+    /** Generations of commits not in the file, by index. */
+    private HashMap<Integer, Integer> _generations = new HashMap<>();
+    /** Hashes of commits not in the file, by index minus file size; those
+     *  of the tail first. */
+    private ArrayList<String> _extras = new ArrayList<>();
+    /** Parent hashes of the commits of the tail, by index. */
+    private HashMap<Integer, String[]> _tailParents = new HashMap<>();
+    /** Number of commits of the tail. */
+    private int _tailSize;
+    /** If the tail has been read. */
+    private boolean _tailRead;
+    /** Hashes of all commits, null until loaded. */
+    private ArrayList<String> _all;
+    /** Mapped commit-graph file, null until used. */
+    private ByteBuffer _file;
+
+    /** Paint flags for the merge-base search. */
+    private static final int SIDE_ONE = 1, SIDE_TWO = 2,
+            BOTH_SIDES = SIDE_ONE | SIDE_TWO, STALE = 4;
+    /** Magic bytes starting the commit-graph file. */
+    private static final byte[] MAGIC = {'G', 'C', 'G', 'R'};
+    /** Length of the header: magic and commit count. */
+    private static final int HEADER_LENGTH = MAGIC.length + Integer.BYTES;
+    /** Length of an entry: hash, generation and two parent positions. */
+    private static final int ENTRY_LENGTH =
+            Pack.HASH_LENGTH + 3 * Integer.BYTES;
+    /** Length of a tail entry: hash, generation and two parent hashes. */
+    private static final int TAIL_ENTRY_LENGTH =
+            3 * Pack.HASH_LENGTH + Integer.BYTES;
+    /** Parent hash of a tail entry lacking that parent. */
+    private static final byte[] NO_PARENT = new byte[Pack.HASH_LENGTH];
+    /** Commits the tail may hold whatever the size of the file. */
+    private static final int TAIL_MIN = 256;
+    /** The tail may hold up to this part of the commits of the file. */
+    private static final int TAIL_PART = 8;
+    /** Convenience for the commit-graph file names. */
+    static final String GRAPH_FILE = "commit-graph",
+            TAIL_FILE = "commit-graph.tail";
+
+}
@@ -0,0 +1,328 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+
+import static gitlet.GitletOperator.*;
+
+/** Daemon serving gitlet commands of one repository over a UNIX socket in
+ *  .gitlet/daemon.sock. The pack, the commit graph, the blob list and the
+ *  stat cache stay in memory between commands. They are dropped when the
+ *  pack is changed by another process, and the stat cache forgets files
+ *  the working tree reports as changed; every directory of the working
+ *  tree but .gitlet is watched, those made later included. Main
+ *  forwards commands to a running daemon and only runs them itself when
+ *  there is none.
+ *  @author Shixuan (Wayne) Li
+ */
+class Daemon {
+
+    /* **********************************
+     *              Server              *
+     ********************************** */
+
+    /** Serve commands until asked to stop. */
+    static void serve() {
+        Path socket = Paths.get(PATH_SOCKET);
+        UnixDomainSocketAddress address = UnixDomainSocketAddress.of(socket);
+        PrintStream console = System.out;
+        try (ServerSocketChannel server =
+                     ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+             WatchService watcher = FileSystems.getDefault()
+                     .newWatchService()) {
+            Files.deleteIfExists(socket);
+            server.bind(address);
+            WATCHED.clear();
+            watch(watcher, Paths.get(PATH_WORKING), "");
+            _serving = true;
+            console.println("Serving " + socket.toAbsolutePath());
+            boolean running = true;
+            while (running) {
+                try (SocketChannel client = server.accept()) {
+                    String[] args = readRequest(
+                            Channels.newInputStream(client));
+                    running = !isStop(args);
+                    forgetChanges(watcher);
+                    byte[] output = running ? run(args) : new byte[0];
+                    writeResponse(Channels.newOutputStream(client), output,
+                            running ? Trace.served() : "");
+                } catch (IOException e) {
+                    e.printStackTrace();
+                } finally {
+                    System.setOut(console);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            _serving = false;
+            try {
+                Files.deleteIfExists(socket);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /** Run one command, capturing what it prints.
+     * @param args -- command line
+     * @return -- the output. */
+    private static byte[] run(String[] args) {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(output, true));
+        if (packChanged()) {
+            forgetRepository();
+        }
+        try {
+            Main.run(args);
+        } catch (Exit exit) {
+            return output.toByteArray();
+        } catch (RuntimeException | Error e) {
+            e.printStackTrace();
+            forgetRepository();
+            myJournal().clear();
+        }
+        _packStamp = packStamp();
+        return output.toByteArray();
+    }
+
+    /** Drop what the working tree reports as changed from the stat
+     *  cache, and everything if too much changed to tell. A directory
+     *  made or removed drops every file under it, and a directory made
+     *  is watched too.
+     * @param watcher -- watch on the working tree. */
+    private static void forgetChanges(WatchService watcher) {
+        WatchKey key;
+        while ((key = watcher.poll()) != null) {
+            String directory = WATCHED.get(key);
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                        || directory == null) {
+                    forgetStatCache();
+                    rewatch(watcher);
+                    continue;
+                }
+                String name = directory + event.context();
+                myStatCache().forget(name);
+                if (event.kind() != StandardWatchEventKinds.ENTRY_MODIFY) {
+                    myStatCache().forgetUnder(name + "/");
+                }
+                if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE
+                        && !name.equals(GITLET_PATH)
+                        && Files.isDirectory(Paths.get(PATH_WORKING + name),
+                                LinkOption.NOFOLLOW_LINKS)) {
+                    try {
+                        watch(watcher, Paths.get(PATH_WORKING + name),
+                                name + "/");
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            }
+            if (!key.reset()) {
+                WATCHED.remove(key);
+            }
+        }
+    }
+
+    /** Watch a directory and every directory under it but .gitlet,
+     *  remembering the path of each from the working directory.
+     * @param watcher -- watch on the working tree
+     * @param directory -- the directory
+     * @param path -- its path with a trailing /, or "" for the working
+     *                directory
+     * @throws IOException -- if a directory cannot be watched. */
+    private static void watch(WatchService watcher, Path directory,
+                              String path) throws IOException {
+        WATCHED.put(directory.register(watcher,
+                StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_DELETE,
+                StandardWatchEventKinds.ENTRY_MODIFY), path);
+        File[] entries = directory.toFile().listFiles();
+        if (entries == null) {
+            return;
+        }
+        for (File entry : entries) {
+            String name = path + entry.getName();
+            if (!name.equals(GITLET_PATH) && Files.isDirectory(
+                    entry.toPath(), LinkOption.NOFOLLOW_LINKS)) {
+                watch(watcher, entry.toPath(), name + "/");
+            }
+        }
+    }
+
+    /** Watch the working tree again after events were lost, so that
+     *  directories made meanwhile are watched.
+     * @param watcher -- watch on the working tree. */
+    private static void rewatch(WatchService watcher) {
+        try {
+            watch(watcher, Paths.get(PATH_WORKING), "");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** Check if the pack changed since the daemon last left it.
+     * @return -- check result. */
+    private static boolean packChanged() {
+        return _packStamp == null || !_packStamp.equals(packStamp());
+    }
+
+    /** Size and modification time of the pack index and commit graph.
+     * @return -- stamp to compare. */
+    private static String packStamp() {
+        StringBuilder result = new StringBuilder();
+        for (String name : new String[] {Pack.INDEX_FILE,
+                CommitGraph.GRAPH_FILE, CommitGraph.TAIL_FILE}) {
+            File file = new File(PATH_PACK + name);
+            result.append(file.length()).append(' ')
+                    .append(file.lastModified()).append(' ');
+        }
+        return result.toString();
+    }
+
+    /** Check if the daemon is serving commands. doSystemExit then throws
+     *  Exit instead of ending the process.
+     * @return -- check result. */
+    static boolean isServing() {
+        return _serving;
+    }
+
+    /** Thrown by doSystemExit to end a command served by the daemon. */
+    static class Exit extends RuntimeException {
+        /** Exits are never serialized. */
+        private static final long serialVersionUID = 1L;
+    }
+
+    /* **********************************
+     *              Client              *
+     ********************************** */
+
+    /** Hand a command to the daemon of the repository, if one runs, and
+     *  print its output.
+     * @param args -- command line
+     * @return -- if the daemon ran the command. */
+    static boolean forward(String... args) {
+        Path socket = Paths.get(PATH_SOCKET);
+        if (!Files.exists(socket)) {
+            return false;
+        }
+        try (SocketChannel channel = SocketChannel.open(
+                UnixDomainSocketAddress.of(socket))) {
+            writeRequest(Channels.newOutputStream(channel), args);
+            DataInputStream in = new DataInputStream(
+                    Channels.newInputStream(channel));
+            System.out.write(readResponse(in));
+            System.out.flush();
+            String trace = in.readUTF();
+            if (!trace.isEmpty()) {
+                Trace.write(trace, Trace.targetOf(args));
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /** Check if a command line asks the daemon to stop.
+     * @param args -- command line
+     * @return -- check result. */
+    static boolean isStop(String[] args) {
+        return args.length == 2 && args[0].equals(DAEMON_COMMAND)
+                && args[1].equals(STOP_COMMAND);
+    }
+
+    /* **********************************
+     *             Protocol             *
+     ********************************** */
+
+    /** Send a command line: the number of arguments, then each of them.
+     * @param out -- stream to the daemon
+     * @param args -- command line
+     * @throws IOException -- if OUT fails. */
+    private static void writeRequest(OutputStream out, String[] args)
+            throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(args.length);
+        for (String arg : args) {
+            data.writeUTF(arg);
+        }
+        data.flush();
+    }
+
+    /** Receive a command line written by writeRequest.
+     * @param in -- stream from the client
+     * @return -- command line.
+     * @throws IOException -- if IN fails. */
+    private static String[] readRequest(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        String[] result = new String[data.readInt()];
+        for (int i = 0; i < result.length; i += 1) {
+            result[i] = data.readUTF();
+        }
+        return result;
+    }
+
+    /** Send the output of a command: its length, then its bytes, then
+     *  its trace summary.
+     * @param out -- stream to the client
+     * @param output -- the output
+     * @param trace -- the summary, "" if the command was not traced
+     * @throws IOException -- if OUT fails. */
+    private static void writeResponse(OutputStream out, byte[] output,
+                                      String trace) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(output.length);
+        data.write(output);
+        data.writeUTF(trace);
+        data.flush();
+    }
+
+    /** Receive the output written by writeResponse, leaving the trace
+     *  summary after it in IN.
+     * @param in -- stream from the daemon
+     * @return -- the output.
+     * @throws IOException -- if IN fails. */
+    private static byte[] readResponse(DataInputStream in)
+            throws IOException {
+        byte[] result = new byte[in.readInt()];
+        in.readFully(result);
+        return result;
+    }
+
+    /** If the daemon is serving commands. */
+    private static boolean _serving;
+    /** Path from the working directory, with a trailing /, of each
+     *  directory watched, by its watch key. */
+    private static final HashMap<WatchKey, String> WATCHED =
+            new HashMap<>();
+    /** Stamp of the pack when the last command finished. */
+    private static String _packStamp;
+
+    /** Command starting the daemon. */
+    static final String DAEMON_COMMAND = "daemon";
+    /** Operand of DAEMON_COMMAND stopping the daemon. */
+    static final String STOP_COMMAND = "stop";
+
+}
@@ -0,0 +1,161 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.nio.ByteBuffer;
+
+/** Binary deltas between two versions of a file. A delta is a list of
+ *  instructions rebuilding the target: copy a range of the base, or
+ *  insert literal bytes. Ranges of the base are found by hashing its
+ *  aligned blocks and looking up every block-sized window of the target.
+ *  @author Shixuan (Wayne) Li
+ */
+class Delta {
+
+    /** Write the delta turning BASE into TARGET.
+     * @param base -- old version
+     * @param target -- new version
+     * @param out -- where the instructions go
+     * @throws IOException -- if OUT fails. */
+    static void encode(ByteBuffer base, ByteBuffer target, OutputStream out)
+            throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        int[] table = blockTable(base);
+        int mask = table.length - 1;
+        int size = target.limit();
+        int pending = 0, position = 0;
+        while (position + BLOCK <= size) {
+            int candidate = table[hash(target, position) & mask] - 1;
+            int length = 0;
+            if (candidate >= 0) {
+                length = matchLength(base, candidate, target, position);
+            }
+            if (length < BLOCK) {
+                position += 1;
+                continue;
+            }
+            insert(data, target, pending, position);
+            data.writeByte(COPY);
+            data.writeInt(candidate);
+            data.writeInt(length);
+            position += length;
+            pending = position;
+        }
+        insert(data, target, pending, size);
+        data.flush();
+    }
+
+    /** Rebuild a target from its base and delta, streaming it to OUT.
+     * @param base -- old version
+     * @param delta -- instructions written by encode
+     * @param out -- where the target goes
+     * @throws IOException -- if reading DELTA or writing OUT fails. */
+    static void apply(ByteBuffer base, InputStream delta, OutputStream out)
+            throws IOException {
+        DataInputStream data = new DataInputStream(delta);
+        byte[] buf = new byte[BUFFER_SIZE];
+        while (true) {
+            int op;
+            try {
+                op = data.readByte();
+            } catch (EOFException e) {
+                return;
+            }
+            int offset = op == COPY ? data.readInt() : 0;
+            int length = data.readInt();
+            while (length > 0) {
+                int chunk = Math.min(length, buf.length);
+                if (op == COPY) {
+                    ByteBuffer range = base.duplicate();
+                    range.position(offset);
+                    range.get(buf, 0, chunk);
+                    offset += chunk;
+                } else {
+                    data.readFully(buf, 0, chunk);
+                }
+                out.write(buf, 0, chunk);
+                length -= chunk;
+            }
+        }
+    }
+
+    /** Write the bytes of TARGET from START to END as one insertion.
+     * @param data -- instruction stream
+     * @param target -- new version
+     * @param start -- first byte
+     * @param end -- byte after the last
+     * @throws IOException -- if DATA fails. */
+    private static void insert(DataOutputStream data, ByteBuffer target,
+                               int start, int end) throws IOException {
+        if (start >= end) {
+            return;
+        }
+        data.writeByte(INSERT);
+        data.writeInt(end - start);
+        byte[] buf = new byte[Math.min(end - start, BUFFER_SIZE)];
+        ByteBuffer range = target.duplicate();
+        range.position(start);
+        for (int left = end - start; left > 0; left -= buf.length) {
+            int chunk = Math.min(left, buf.length);
+            range.get(buf, 0, chunk);
+            data.write(buf, 0, chunk);
+        }
+    }
+
+    /** Hash every aligned block of BASE into an open table of offsets.
+     *  Later blocks win collisions.
+     * @param base -- old version
+     * @return -- table of (offset + 1), 0 for empty slots. */
+    private static int[] blockTable(ByteBuffer base) {
+        int blocks = base.limit() / BLOCK;
+        int size = Integer.highestOneBit(Math.max(blocks, 1) * 2);
+        int[] table = new int[size];
+        for (int i = 0; i < blocks; i += 1) {
+            table[hash(base, i * BLOCK) & (size - 1)] = i * BLOCK + 1;
+        }
+        return table;
+    }
+
+    /** Hash the block of BUFFER starting at POSITION.
+     * @param buffer -- content
+     * @param position -- start of the block
+     * @return -- hash. */
+    private static int hash(ByteBuffer buffer, int position) {
+        int result = 0;
+        for (int i = 0; i < BLOCK; i += 1) {
+            result = result * HASH_MULTIPLIER + buffer.get(position + i);
+        }
+        return result ^ (result >>> 16);
+    }
+
+    /** Count equal bytes of BASE and TARGET from the given positions.
+     * @param base -- old version
+     * @param from -- position in BASE
+     * @param target -- new version
+     * @param position -- position in TARGET
+     * @return -- length of the match. */
+    private static int matchLength(ByteBuffer base, int from,
+                                   ByteBuffer target, int position) {
+        int limit = Math.min(base.limit() - from, target.limit() - position);
+        int length = 0;
+        while (length < limit
+                && base.get(from + length) == target.get(position + length)) {
+            length += 1;
+        }
+        return length;
+    }
+
+    /** Instruction codes. */
+    private static final byte COPY = 1, INSERT = 2;
+    /** Length of a hashed block, also the shortest copy. */
+    private static final int BLOCK = 16;
+    /** Multiplier of the block hash. */
+    private static final int HASH_MULTIPLIER = 31;
+    /** Bytes moved at a time. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+}
@@ -0,0 +1,520 @@
+package gitlet;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/** Line diffs and three-way merges. Texts are kept as the buffers they
+ *  come in, usually mapped files, with only the start and hash of each
+ *  line in memory. Differences are found by Myers' algorithm, splitting
+ *  at the middle of the shortest edit path so that only two rows of
+ *  diagonals are ever kept.
+ *  @author Shixuan (Wayne) Li
+ */
+class Diff {
+
+    /* **********************************
+     *               Diff               *
+     ********************************** */
+
+    /** Find the changed ranges turning A into B.
+     * @param a -- old text
+     * @param b -- new text
+     * @return -- hunks {start in A, end in A, start in B, end in B}, in
+     *            order, ends exclusive. */
+    static ArrayList<int[]> hunks(Text a, Text b) {
+        ArrayList<int[]> result = new ArrayList<>();
+        diff(a, 0, a.size(), b, 0, b.size(), result);
+        return result;
+    }
+
+    /** Add the hunks turning a range of A into a range of B.
+     * @param a -- old text
+     * @param a0 -- start in A
+     * @param a1 -- end in A
+     * @param b -- new text
+     * @param b0 -- start in B
+     * @param b1 -- end in B
+     * @param result -- hunks found so far. */
+    private static void diff(Text a, int a0, int a1, Text b, int b0, int b1,
+                             ArrayList<int[]> result) {
+        while (a0 < a1 && b0 < b1 && a.same(a0, b, b0)) {
+            a0 += 1;
+            b0 += 1;
+        }
+        while (a0 < a1 && b0 < b1 && a.same(a1 - 1, b, b1 - 1)) {
+            a1 -= 1;
+            b1 -= 1;
+        }
+        if (a0 == a1 && b0 == b1) {
+            return;
+        }
+        int[] split = null;
+        if (a1 - a0 + b1 - b0 > MAX_COST) {
+            split = anchor(a, a0, a1, b, b0, b1);
+        }
+        if (split == null && a0 < a1 && b0 < b1) {
+            split = middle(a, a0, a1, b, b0, b1);
+        }
+        if (split == null) {
+            add(result, a0, a1, b0, b1);
+            return;
+        }
+        diff(a, a0, split[0], b, b0, split[1], result);
+        diff(a, split[0], a1, b, split[1], b1, result);
+    }
+
+    /** Find where the shortest edit path between two ranges crosses its
+     *  middle, walking it from both ends at once. The walk gives up past
+     *  MAX_COST edits, leaving the ranges as one change.
+     * @param a -- old text
+     * @param a0 -- start in A
+     * @param a1 -- end in A
+     * @param b -- new text
+     * @param b0 -- start in B
+     * @param b1 -- end in B
+     * @return -- {position in A, position in B}, or null if the ranges
+     *            have nothing in common. */
+    private static int[] middle(Text a, int a0, int a1, Text b, int b0,
+                                int b1) {
+        int n = a1 - a0, m = b1 - b0;
+        int maxD = Math.min((n + m + 1) / 2, MAX_COST + 1);
+        int offset = maxD, length = 2 * maxD + 2;
+        int[] forward = new int[length], backward = new int[length];
+        Arrays.fill(forward, -1);
+        Arrays.fill(backward, -1);
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+        int delta = n - m;
+        boolean front = (delta & 1) != 0;
+        int k1start = 0, k1end = 0, k2start = 0, k2end = 0;
+        for (int d = 0; d < maxD; d += 1) {
+            for (int k1 = -d + k1start; k1 <= d - k1end; k1 += 2) {
+                int i = offset + k1;
+                int x1 = k1 == -d || (k1 != d && forward[i - 1]
+                        < forward[i + 1]) ? forward[i + 1] : forward[i - 1] + 1;
+                int y1 = x1 - k1;
+                while (x1 < n && y1 < m && a.same(a0 + x1, b, b0 + y1)) {
+                    x1 += 1;
+                    y1 += 1;
+                }
+                forward[i] = x1;
+                if (x1 > n) {
+                    k1end += 2;
+                } else if (y1 > m) {
+                    k1start += 2;
+                } else if (front) {
+                    int j = offset + delta - k1;
+                    if (j >= 0 && j < length && backward[j] != -1
+                            && x1 >= n - backward[j]) {
+                        return new int[] {a0 + x1, b0 + y1};
+                    }
+                }
+            }
+            for (int k2 = -d + k2start; k2 <= d - k2end; k2 += 2) {
+                int i = offset + k2;
+                int x2 = k2 == -d || (k2 != d && backward[i - 1]
+                        < backward[i + 1])
+                        ? backward[i + 1] : backward[i - 1] + 1;
+                int y2 = x2 - k2;
+                while (x2 < n && y2 < m
+                        && a.same(a1 - x2 - 1, b, b1 - y2 - 1)) {
+                    x2 += 1;
+                    y2 += 1;
+                }
+                backward[i] = x2;
+                if (x2 > n) {
+                    k2end += 2;
+                } else if (y2 > m) {
+                    k2start += 2;
+                } else if (!front) {
+                    int j = offset + delta - k2;
+                    if (j >= 0 && j < length && forward[j] != -1) {
+                        int x1 = forward[j];
+                        int y1 = offset + x1 - j;
+                        if (x1 >= n - x2) {
+                            return new int[] {a0 + x1, b0 + y1};
+                        }
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Find the line appearing once in each range closest to the middle
+     *  of the range of A. Long ranges are split there first, as patience
+     *  and histogram diffs do, so that Myers' walk only runs on short
+     *  ones; the diff may then not be the shortest.
+     * @param a -- old text
+     * @param a0 -- start in A
+     * @param a1 -- end in A
+     * @param b -- new text
+     * @param b0 -- start in B
+     * @param b1 -- end in B
+     * @return -- {position in A, position in B} of the line, or null if
+     *            there is none. */
+    private static int[] anchor(Text a, int a0, int a1, Text b, int b0,
+                                int b1) {
+        HashMap<Integer, int[]> seen = new HashMap<>();
+        for (int i = a0; i < a1; i += 1) {
+            int[] found = seen.computeIfAbsent(a._hashes[i],
+                    k -> new int[] {0, 0, 0, 0});
+            found[0] += 1;
+            found[1] = i;
+        }
+        for (int j = b0; j < b1; j += 1) {
+            int[] found = seen.get(b._hashes[j]);
+            if (found != null) {
+                found[2] += 1;
+                found[3] = j;
+            }
+        }
+        int middle = (a0 + a1) >>> 1;
+        int[] result = null;
+        for (int[] found : seen.values()) {
+            if (found[0] == 1 && found[2] == 1
+                    && a.same(found[1], b, found[3])
+                    && (result == null || Math.abs(found[1] - middle)
+                    < Math.abs(result[0] - middle))) {
+                result = new int[] {found[1], found[3]};
+            }
+        }
+        return result;
+    }
+
+    /** Add a hunk, joining it to the last one if they touch.
+     * @param result -- hunks so far
+     * @param a0 -- start in A
+     * @param a1 -- end in A
+     * @param b0 -- start in B
+     * @param b1 -- end in B. */
+    private static void add(ArrayList<int[]> result, int a0, int a1,
+                            int b0, int b1) {
+        if (!result.isEmpty()) {
+            int[] last = result.get(result.size() - 1);
+            if (last[1] == a0 && last[3] == b0) {
+                last[1] = a1;
+                last[3] = b1;
+                return;
+            }
+        }
+        result.add(new int[] {a0, a1, b0, b1});
+    }
+
+    /* **********************************
+     *              Merging             *
+     ********************************** */
+
+    /** Merge the changes OURS and THEIRS made to BASE, line by line.
+     *  Ranges of BASE changed by one side take that side; ranges changed
+     *  by both, or touching, take both between conflict markers unless
+     *  they were changed the same way.
+     * @param base -- common ancestor
+     * @param ours -- current version
+     * @param theirs -- given version
+     * @param out -- where the merged text goes
+     * @return -- if any conflict was marked.
+     * @throws IOException -- if OUT fails. */
+    static boolean merge(Text base, Text ours, Text theirs,
+                         OutputStream out) throws IOException {
+        ArrayList<int[]> mine = hunks(base, ours);
+        ArrayList<int[]> other = hunks(base, theirs);
+        boolean conflict = false;
+        int position = 0, i = 0, j = 0;
+        while (i < mine.size() || j < other.size()) {
+            boolean mineFirst = j >= other.size() || (i < mine.size()
+                    && mine.get(i)[0] <= other.get(j)[0]);
+            int start = mineFirst ? mine.get(i)[0] : other.get(j)[0];
+            int end = mineFirst ? mine.get(i)[1] : other.get(j)[1];
+            int i0 = i, j0 = j;
+            if (mineFirst) {
+                i += 1;
+            } else {
+                j += 1;
+            }
+            boolean grown = true;
+            while (grown) {
+                grown = false;
+                if (i < mine.size() && mine.get(i)[0] <= end) {
+                    end = Math.max(end, mine.get(i)[1]);
+                    i += 1;
+                    grown = true;
+                }
+                if (j < other.size() && other.get(j)[0] <= end) {
+                    end = Math.max(end, other.get(j)[1]);
+                    j += 1;
+                    grown = true;
+                }
+            }
+            base.write(out, position, start);
+            if (j == j0) {
+                ours.write(out, side(mine, i0, i, start, true),
+                        side(mine, i0, i, end, false));
+            } else if (i == i0) {
+                theirs.write(out, side(other, j0, j, start, true),
+                        side(other, j0, j, end, false));
+            } else {
+                int o0 = side(mine, i0, i, start, true);
+                int o1 = side(mine, i0, i, end, false);
+                int t0 = side(other, j0, j, start, true);
+                int t1 = side(other, j0, j, end, false);
+                if (ours.sameRange(o0, o1, theirs, t0, t1)) {
+                    ours.write(out, o0, o1);
+                } else {
+                    conflict = true;
+                    marker(out, CONFLICT_START);
+                    ours.write(out, o0, o1);
+                    marker(out, CONFLICT_MIDDLE);
+                    theirs.write(out, t0, t1);
+                    marker(out, CONFLICT_END);
+                }
+            }
+            position = end;
+        }
+        base.write(out, position, base.size());
+        return conflict;
+    }
+
+    /** Map a position of the base to one side, given that side's hunks
+     *  covering a merged range.
+     * @param hunks -- hunks of the side
+     * @param from -- first hunk in the range
+     * @param to -- hunk after the range
+     * @param position -- start or end of the range in the base
+     * @param isStart -- if POSITION is the start
+     * @return -- the position in the side. */
+    private static int side(ArrayList<int[]> hunks, int from, int to,
+                            int position, boolean isStart) {
+        if (isStart) {
+            int[] first = hunks.get(from);
+            return first[2] - (first[0] - position);
+        }
+        int[] last = hunks.get(to - 1);
+        return last[3] + (position - last[1]);
+    }
+
+    /** Write a conflict marker line.
+     * @param out -- output
+     * @param marker -- the marker
+     * @throws IOException -- if OUT fails. */
+    private static void marker(OutputStream out, String marker)
+            throws IOException {
+        out.write((marker + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    /* **********************************
+     *          Unified-Format          *
+     ********************************** */
+
+    /** Write the differences between two texts in unified format, each
+     *  hunk with up to CONTEXT unchanged lines around it.
+     * @param a -- old text
+     * @param b -- new text
+     * @param out -- output
+     * @throws IOException -- if OUT fails. */
+    static void unified(Text a, Text b, OutputStream out)
+            throws IOException {
+        ArrayList<int[]> hunks = hunks(a, b);
+        int i = 0;
+        while (i < hunks.size()) {
+            int j = i + 1;
+            while (j < hunks.size()
+                    && hunks.get(j)[0] - hunks.get(j - 1)[1] <= 2 * CONTEXT) {
+                j += 1;
+            }
+            int a0 = Math.max(0, hunks.get(i)[0] - CONTEXT);
+            int b0 = hunks.get(i)[2] - (hunks.get(i)[0] - a0);
+            int a1 = Math.min(a.size(), hunks.get(j - 1)[1] + CONTEXT);
+            int b1 = hunks.get(j - 1)[3] + (a1 - hunks.get(j - 1)[1]);
+            String header = "@@ -" + range(a0, a1) + " +" + range(b0, b1)
+                    + " @@\n";
+            out.write(header.getBytes(StandardCharsets.UTF_8));
+            int position = a0;
+            for (int k = i; k < j; k += 1) {
+                int[] hunk = hunks.get(k);
+                a.write(out, position, hunk[0], ' ');
+                a.write(out, hunk[0], hunk[1], '-');
+                b.write(out, hunk[2], hunk[3], '+');
+                position = hunk[1];
+            }
+            a.write(out, position, a1, ' ');
+            i = j;
+        }
+    }
+
+    /** Format a range of lines for a hunk header.
+     * @param start -- first line, from 0
+     * @param end -- line after the last
+     * @return -- "start,length", start from 1, or the line before an
+     *            empty range. */
+    private static String range(int start, int end) {
+        int first = end > start ? start + 1 : start;
+        return first + "," + (end - start);
+    }
+
+    /* **********************************
+     *               Text               *
+     ********************************** */
+
+    /** Lines of a buffer. Only where each line starts and its hash are
+     *  kept; the bytes stay in the buffer. */
+    static class Text {
+
+        /** The lines of CONTENT.
+         * @param content -- text. */
+        Text(ByteBuffer content) {
+            _content = content.duplicate();
+            int size = _content.limit();
+            int[] starts = new int[INITIAL_LINES];
+            int count = 0;
+            int start = 0;
+            while (start < size) {
+                if (count + 1 >= starts.length) {
+                    starts = Arrays.copyOf(starts, starts.length * 2);
+                }
+                starts[count] = start;
+                count += 1;
+                int end = start;
+                while (end < size && _content.get(end) != '\n') {
+                    end += 1;
+                }
+                start = end + 1;
+            }
+            starts[count] = size;
+            _starts = Arrays.copyOf(starts, count + 1);
+            _hashes = new int[count];
+            for (int i = 0; i < count; i += 1) {
+                int hash = 0;
+                for (int k = _starts[i]; k < lineEnd(i); k += 1) {
+                    hash = hash * HASH_MULTIPLIER + _content.get(k);
+                }
+                _hashes[i] = hash;
+            }
+        }
+
+        /** Number of lines.
+         * @return -- line count. */
+        int size() {
+            return _hashes.length;
+        }
+
+        /** Check if a line of this text equals a line of another,
+         *  ignoring a missing final newline.
+         * @param i -- line of this text
+         * @param other -- other text
+         * @param j -- line of OTHER
+         * @return -- check result. */
+        boolean same(int i, Text other, int j) {
+            if (_hashes[i] != other._hashes[j]) {
+                return false;
+            }
+            int length = lineEnd(i) - _starts[i];
+            if (length != other.lineEnd(j) - other._starts[j]) {
+                return false;
+            }
+            for (int k = 0; k < length; k += 1) {
+                if (_content.get(_starts[i] + k)
+                        != other._content.get(other._starts[j] + k)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** Check if a range of lines equals a range of another text.
+         * @param from -- first line of this text
+         * @param to -- line after the last
+         * @param other -- other text
+         * @param otherFrom -- first line of OTHER
+         * @param otherTo -- line after the last
+         * @return -- check result. */
+        boolean sameRange(int from, int to, Text other, int otherFrom,
+                          int otherTo) {
+            if (to - from != otherTo - otherFrom) {
+                return false;
+            }
+            for (int i = 0; i < to - from; i += 1) {
+                if (!same(from + i, other, otherFrom + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** Write a range of lines, each ending in a newline.
+         * @param out -- output
+         * @param from -- first line
+         * @param to -- line after the last
+         * @throws IOException -- if OUT fails. */
+        void write(OutputStream out, int from, int to) throws IOException {
+            if (_buffer == null) {
+                _buffer = new byte[BUFFER_SIZE];
+            }
+            for (int i = from; i < to; i += 1) {
+                int end = lineEnd(i);
+                for (int k = _starts[i]; k < end; k += _buffer.length) {
+                    int chunk = Math.min(_buffer.length, end - k);
+                    _content.get(k, _buffer, 0, chunk);
+                    out.write(_buffer, 0, chunk);
+                }
+                out.write('\n');
+            }
+        }
+
+        /** Write a range of lines, each after a prefix character.
+         * @param out -- output
+         * @param from -- first line
+         * @param to -- line after the last
+         * @param prefix -- prefix character
+         * @throws IOException -- if OUT fails. */
+        void write(OutputStream out, int from, int to, char prefix)
+                throws IOException {
+            for (int i = from; i < to; i += 1) {
+                out.write(prefix);
+                write(out, i, i + 1);
+            }
+        }
+
+        /** End of a line, before its newline.
+         * @param i -- line
+         * @return -- position of its newline, or the end of the text. */
+        private int lineEnd(int i) {
+            int end = _starts[i + 1];
+            if (end > _starts[i] && _content.get(end - 1) == '\n') {
+                end -= 1;
+            }
+            return end;
+        }
+
+        /** The text. */
+        private final ByteBuffer _content;
+        /** Start of each line, then the end of the text. */
+        private final int[] _starts;
+        /** Hash of each line. */
+        private final int[] _hashes;
+        /** Bytes being written, null until used. */
+        private byte[] _buffer;
+    }
+
+    /** Lines of context around unified hunks. */
+    static final int CONTEXT = 3;
+    /** Conflict markers. */
+    static final String CONFLICT_START = "<<<<<<< HEAD",
+            CONFLICT_MIDDLE = "=======",
+            CONFLICT_END = ">>>>>>>";
+    /** Lines above which ranges are split at a unique common line, and
+     *  edits after which Myers' walk gives up. */
+    private static final int MAX_COST = 1 << 12;
+    /** Line slots allocated at first. */
+    private static final int INITIAL_LINES = 1 << 10;
+    /** Multiplier of line hashes. */
+    private static final int HASH_MULTIPLIER = 31;
+    /** Bytes written at a time. */
+    private static final int BUFFER_SIZE = 1 << 13;
+
+}
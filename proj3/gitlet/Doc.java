@@ -1,8 +1,15 @@
 package gitlet;
 
 import java.io.File;
-
-import static gitlet.Utils.*;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Formatter;
 
 /** Representing a full doc file.
  *  @author Shixuan (Wayne) Li
@@ -49,14 +56,49 @@ class Doc {
     /** Get the hash id base on 'this' file content.
      * @return generate hash. */
     private String getHash() {
-        File file = new File(_myPath);
-        byte[] data = readContents(file);
-        return sha1(_myName, data);
+        return hashOf(_myName, new File(_myPath), null);
+    }
+
+    /** Hash a file the way Utils.sha1(name, content) does, streaming it
+     *  once and writing it into COPY along the way.
+     * @param name -- file name
+     * @param source -- file to hash
+     * @param copy -- where to copy the file, null for no copy
+     * @return -- hash of the file. */
+    static String hashOf(String name, File source, File copy) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            md.update(name.getBytes(StandardCharsets.UTF_8));
+            try (InputStream in = new FileInputStream(source);
+                 OutputStream out = copy == null
+                         ? OutputStream.nullOutputStream()
+                         : new FileOutputStream(copy)) {
+                byte[] buf = new byte[BUFFER_SIZE];
+                int length;
+                while ((length = in.read(buf)) > 0) {
+                    md.update(buf, 0, length);
+                    Trace.hashed(length);
+                    out.write(buf, 0, length);
+                }
+            }
+            Formatter result = new Formatter();
+            for (byte b : md.digest()) {
+                result.format("%02x", b);
+            }
+            return result.toString();
+        } catch (NoSuchAlgorithmException excp) {
+            throw new IllegalArgumentException("System does not support SHA-1");
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
     }
 
     /** Set the local parameters. */
     private String _myName, _myPath, _myHash;
 
+    /** Bytes read at a time while hashing. */
+    private static final int BUFFER_SIZE = 1 << 16;
+
     /** Convenience for name.txt folder. */
     static final String NAME_FOLDER = "name.txt";
 
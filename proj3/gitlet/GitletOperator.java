@@ -3,26 +3,38 @@ package gitlet;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 
+import java.util.Map;
 import java.util.Set;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.TreeSet;
+import java.util.LinkedHashSet;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.function.Consumer;
+import java.util.function.Predicate;
 
 import java.io.File;
 import java.io.FileWriter;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.PrintWriter;
 import java.io.OutputStream;
-import java.io.BufferedReader;
+import java.io.FileOutputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.BufferedReader;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.InputStreamReader;
 import java.io.FileNotFoundException;
 
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
 import static gitlet.Branch.*;
 import static gitlet.Commit.*;
 import static gitlet.Utils.*;
@@ -42,9 +54,13 @@ class GitletOperator {
      * @param input -- user input. */
     GitletOperator(String input) {
         _input = input;
-        _blobs = new Blob();
-        _staged = new Staged();
-        _branch = new Branch().restoreBranch();
+        _journal.recover();
+        if (_pack == null) {
+            _pack = new Pack();
+        }
+        _pack.recover();
+        _staged = null;
+        _branch = null;
     }
 
     /** Process the user commands. */
@@ -55,10 +71,14 @@ class GitletOperator {
      * @param cmnd -- command
      * @param operands -- operands. */
     void process(String cmnd, String[] operands) {
-        if (cmnd.equals("commit")) {
-            doCommit(operands);
-        } else if (cmnd.equals("find")) {
-            doFind(operands);
+        try {
+            if (cmnd.equals("commit")) {
+                doCommit(operands);
+            } else if (cmnd.equals("find")) {
+                doFind(operands);
+            }
+        } catch (GitletException excp) {
+            doFail(excp);
         }
     }
 
@@ -69,10 +89,18 @@ class GitletOperator {
             Command cmnd = Command.parseCommand(input);
             COMMANDS.get(cmnd.commandType()).accept(cmnd.operands());
         } catch (GitletException excp) {
-            throw new Error("Error --Main.doCommand");
+            doFail(excp);
         }
     }
 
+    /** Report why a command failed and end it, dropping the writes into
+     *  .gitlet it has not made yet, so branches stay as they were.
+     * @param excp -- the failure. */
+    private static void doFail(GitletException excp) {
+        _journal.clear();
+        doSystemExit(excp.getMessage());
+    }
+
     /** Function for "init".
      * @param unused  -- none. */
     private void doInit(String[] unused) {
@@ -81,26 +109,61 @@ class GitletOperator {
                     + "system already exists in the current directory.");
         }
         new File(GITLET_PATH).mkdir();
-        _blobs.init();
-        _staged.init();
+        _pack.init();
+        myBlobs().init();
+        myStaged().init();
         new Branch().init();
         new Commit().init();
         new Remote().init();
     }
 
-    /** Function for "add [file name]".
-     * @param operands  -- file name. */
+    /** Function for "add [file name] ...". Names may be globs.
+     * @param operands  -- file names, separated by whitespace. */
     private void doAdd(String[] operands) {
         doTest(operands);
-        String filename = operands[0];
+        LinkedHashSet<String> filenames = new LinkedHashSet<>();
+        for (String operand : operands[0].trim().split("\\s+")) {
+            if (!isGlob(operand)) {
+                if (!new File(PATH_WORKING + operand).isFile()) {
+                    doSystemExit("File does not exist.");
+                }
+                filenames.add(operand);
+                continue;
+            }
+            ArrayList<String> matched = matchWorkingFiles(operand);
+            if (matched.isEmpty()) {
+                doSystemExit("File does not exist.");
+            }
+            filenames.addAll(matched);
+        }
+        myStaged().add(new ArrayList<>(filenames));
+    }
 
-        File f = new File(PATH_WORKING + filename);
-        if (!f.exists()) {
-            doSystemExit("File does not exist.");
+    /** Check if an operand of add is a glob.
+     * @param operand -- file name or glob
+     * @return -- check result. */
+    private static boolean isGlob(String operand) {
+        for (char c : GLOB_CHARS.toCharArray()) {
+            if (operand.indexOf(c) >= 0) {
+                return true;
+            }
         }
+        return false;
+    }
 
-        Doc file = new Doc(filename, PATH_WORKING);
-        _staged.add(file);
+    /** Get the files in Working place, not ignored, whose paths match a
+     *  glob; "*" stays in one directory and "**" crosses them.
+     * @param glob -- glob pattern
+     * @return -- sorted file names. */
+    private static ArrayList<String> matchWorkingFiles(String glob) {
+        PathMatcher matcher =
+                FileSystems.getDefault().getPathMatcher("glob:" + glob);
+        ArrayList<String> result = new ArrayList<>();
+        WorkingTree.files().sequential()
+                .filter(path -> matcher.matches(Paths.get(path)))
+                .forEach(result::add);
+        Collections.sort(result);
+        return result;
     }
 
     /** Function for "commit [message]".
@@ -119,84 +182,139 @@ class GitletOperator {
 
         String filename = operands[0];
 
-        if (!_staged.hasFileName(filename)
+        if (!myStaged().hasFileName(filename)
                 && !isTrackedByCommit(filename, currentHeadCommit())) {
             doSystemExit("No reason to remove the file.");
         }
 
-        if (_staged.hasFileName(filename)) {
-            _staged.deleteByName(filename);
+        if (myStaged().hasFileName(filename)) {
+            myStaged().deleteByName(filename);
         }
 
         if (isTrackedByCommit(filename, currentHeadCommit())) {
             deleteFromWorking(filename);
-            _staged.addToRemovedNames(filename);
+            myStaged().addToRemovedNames(filename);
         }
     }
 
-    /** Function for "log".
-     * @param unused -- unused. */
-    private void doLog(String[] unused) {
-        doTest(unused);
-        Commit headCommit = new Commit().restoreCommit(currentHeadCommit());
-        while (true) {
-            System.out.println("===");
-            System.out.println("commit " + headCommit.myHash());
-            if (headCommit.isMerged()) {
-                System.out.print("Merge:");
-                for (String commit : headCommit.myParents()) {
-                    System.out.print(" " + commit.substring(0, 7));
-                }
-                System.out.println();
-            }
-            System.out.println("Date: " + headCommit.myDate());
-            System.out.println(headCommit.myMessage());
-            System.out.println();
-
-            if (headCommit.hasParents()) {
-                headCommit = new Commit().restoreCommit(
-                        headCommit.myParents()[0]);
-            } else {
-                return;
-            }
-        }
+    /** Function for "log [-n count] [--since yyyy-MM-dd] [--oneline]".
+     * @param operands -- options. */
+    private void doLog(String[] operands) {
+        doTest(operands);
+        new Log(operands[0]).printHistory(currentHeadCommit());
     }
 
-    /** Function for "global-log".
-     * @param unused -- unused. */
-    private void doGlobalLog(String[] unused) {
-        doTest(unused);
-        for (String hash : getAllDirectorysFrom(PATH_COMMITS)) {
-            Commit headCommit = new Commit().restoreCommit(hash);
-            System.out.println("===");
-            System.out.println("commit " + headCommit.myHash());
-            if (headCommit.isMerged()) {
-                String originCommit =
-                        headCommit.myParents()[0].substring(0, 7);
-                String mergedInCommit =
-                        headCommit.myParents()[1].substring(0, 7);
-                System.out.println("Merge: " + originCommit
-                        + " " + mergedInCommit);
-            }
-            System.out.println("Date: " + headCommit.myDate());
-            System.out.println(headCommit.myMessage());
-            System.out.println();
-        }
+    /** Function for "global-log", with the options of "log".
+     * @param operands -- options. */
+    private void doGlobalLog(String[] operands) {
+        doTest(operands);
+        new Log(operands[0]).printAll();
     }
 
-    /** Function for "find [commit message]".
-     * @param operands -- input. */
+    /** Function for "find [commit message]", "find --word [words]" and
+     *  "find --contains [text]".
+     * @param operands -- text, then the option if any. */
     private void doFind(String[] operands) {
         doTest(operands);
         String message = operands[0];
+        String option = operands.length > 1 ? operands[1] : null;
+        if (option != null && !option.equals(WORD_OPTION)
+                && !option.equals(CONTAINS_OPTION)) {
+            doSystemExit("Incorrect operands.");
+        }
 
-        if (hasCommitWithMsg(message)) {
-            for (String commit : getCommitsWithMsg(message)) {
-                System.out.println(commit);
+        ArrayList<String> found = getCommitsWithMsg(message, option);
+        if (found.isEmpty()) {
+            doSystemExit("Found no commit with that message.");
+        }
+        for (String commit : found) {
+            System.out.println(commit);
+        }
+    }
+
+    /** Function for "diff", "diff [commit id]" and "diff [commit id]
+     *  [commit id]": the changed lines of every file, in unified format,
+     *  from the head commit or the given one to the working files tracked
+     *  by either, or between the two given commits. Working files whose
+     *  stat shows them unchanged are not read.
+     * @param operands -- commit ids, if any. */
+    private void doDiff(String[] operands) {
+        doTest(operands);
+        String ids = operands[0].trim();
+        String[] commits = ids.isEmpty() ? new String[0] : ids.split("\\s+");
+        if (commits.length > 2) {
+            doSystemExit("Incorrect operands.");
+        }
+        ArrayList<Map<String, String>> sides = new ArrayList<>();
+        for (String commit : commits) {
+            String commitId = fullLengthIdOf(commit);
+            if (commitId == null || !existCommit(commitId)) {
+                doSystemExit("No commit with that id exists.");
             }
+            sides.add(new Commit().restoreCommit(commitId).myTree().files());
+        }
+        if (sides.isEmpty()) {
+            sides.add(new Commit().restoreCommit(currentHeadCommit())
+                    .myTree().files());
+        }
+
+        TreeSet<String> names = new TreeSet<>(sides.get(0).keySet());
+        StatCache statCache = myStatCache();
+        if (sides.size() == 1) {
+            names.addAll(new Commit().restoreCommit(currentHeadCommit())
+                    .myTree().files().keySet());
+            HashMap<String, String> working = new HashMap<>();
+            for (String name : names) {
+                if (new File(PATH_WORKING + name).exists()) {
+                    working.put(name, statCache.hashOf(name));
+                }
+            }
+            sides.add(working);
         } else {
-            doSystemExit("Found no commit with that message.");
+            names.addAll(sides.get(1).keySet());
         }
+        boolean working = commits.length < 2;
+        try (OutputStream out = new BufferedOutputStream(System.out) {
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        }) {
+            for (String name : names) {
+                String from = sides.get(0).get(name);
+                String to = sides.get(1).get(name);
+                if (from != null && from.equals(to)) {
+                    continue;
+                }
+                doDiffFile(out, name, from, to, working);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        statCache.save();
+    }
+
+    /** Helper function for doDiff, printing the changes of one file.
+     * @param out -- output
+     * @param name -- file name
+     * @param from -- old blob hash, null if none
+     * @param to -- new blob hash, null if none
+     * @param working -- if the new side is the working file
+     * @throws IOException -- if OUT fails. */
+    private void doDiffFile(OutputStream out, String name, String from,
+                            String to, boolean working) throws IOException {
+        String header = "diff --gitlet a/" + name + " b/" + name + "\n"
+                + "--- " + (from == null ? "/dev/null" : "a/" + name) + "\n"
+                + "+++ " + (to == null ? "/dev/null" : "b/" + name) + "\n";
+        out.write(header.getBytes(StandardCharsets.UTF_8));
+        ByteBuffer empty = ByteBuffer.allocate(0);
+        ByteBuffer before = from == null ? empty : myBlobs().bufferOf(from);
+        ByteBuffer after = empty;
+        if (to != null) {
+            after = working ? mapFile(new File(PATH_WORKING + name))
+                    : myBlobs().bufferOf(to);
+        }
+        Diff.unified(new Diff.Text(before), new Diff.Text(after), out);
     }
 
     /** Function for "status".
@@ -208,7 +326,7 @@ class GitletOperator {
         ArrayList<String> stagedNames = new ArrayList<>();
         ArrayList<String> stagedHashs = getAllDirectorysFrom(PATH_STAGED);
         for (String stagedHash : stagedHashs) {
-            String stagedName = _staged.getNameByHash(stagedHash);
+            String stagedName = myStaged().getNameByHash(stagedHash);
             stagedNames.add(stagedName);
             staged.put(stagedName, stagedHash);
         }
@@ -217,7 +335,7 @@ class GitletOperator {
         doStatusStagedFiles(stagedNames);
         doStatusRemovedFiles();
         doStatusModifiedFiles(staged, stagedNames);
-        doStatusUntrackedFiles();
+        doStatusUntrackedFiles(stagedNames);
     }
 
     /** Helper function showing Branches part for doStatus. */
@@ -262,47 +380,53 @@ class GitletOperator {
         System.out.println();
     }
 
-    /** Helper function showing Modified Files part for doStatus.
+    /** Helper function showing Modified Files part for doStatus. The
+     *  files tracked or staged are hashed in parallel first.
      * @param staged -- HashMap(fileName, fileHash)
      * @param stagedNames -- all staged file names*/
     private void doStatusModifiedFiles(HashMap<String,
             String> staged, ArrayList<String> stagedNames) {
         ArrayList<String> modified = new ArrayList<>();
+        StatCache statCache = myStatCache();
         System.out.println("=== Modifications Not Staged For Commit ===");
+        Map<String, String> filesInCurrentCommit =
+                new Commit().restoreCommit(currentHeadCommit()).myTree()
+                        .files();
+        HashSet<String> names = new HashSet<>(stagedNames);
+        names.addAll(filesInCurrentCommit.keySet());
+        statCache.hashAll(names);
         for (String name : stagedNames) {
             File fileInWorking = new File(PATH_WORKING + name);
             if (!fileInWorking.exists()) {
                 modified.add(name + " (deleted)");
             } else {
-                Doc docInWorking = new Doc(name, PATH_WORKING);
-                if (!docInWorking.myHash().equals(staged.get(name))) {
+                if (!statCache.hashOf(name).equals(staged.get(name))) {
                     modified.add(name + " (modified)");
                 }
             }
         }
-        String[] filesInCurrentCommit = readFrom(PATH_COMMITS
-                + currentHeadCommit() + "/" + FILES_FOLDER);
-        if (filesInCurrentCommit != null) {
-            for (String fileHash : filesInCurrentCommit) {
-                String fileName = _blobs.getNameOf(fileHash);
-                if (!_staged.hasFileName(fileName)) {
-                    File fileInWorking = new File(PATH_WORKING
-                            + fileName);
-                    if (!fileInWorking.exists()
-                            && !_staged.existFileNameInRemoved(fileName)) {
-                        modified.add(fileName + " (deleted)");
-                    } else {
-                        if (fileInWorking.exists()) {
-                            Doc docInWorking = new Doc(fileName, PATH_WORKING);
-                            if (!docInWorking.myHash().equals(fileHash)) {
-                                modified.add(fileName + " (modified)");
-                            }
+        for (Map.Entry<String, String> file
+                : filesInCurrentCommit.entrySet()) {
+            String fileName = file.getKey();
+            String fileHash = file.getValue();
+            if (!myStaged().hasFileName(fileName)) {
+                File fileInWorking = new File(PATH_WORKING
+                        + fileName);
+                if (!fileInWorking.exists()
+                        && !myStaged().existFileNameInRemoved(fileName)) {
+                    modified.add(fileName + " (deleted)");
+                } else {
+                    if (fileInWorking.exists()) {
+                        String hash = statCache.hashOf(fileName);
+                        if (!hash.equals(fileHash)) {
+                            modified.add(fileName + " (modified)");
                         }
                     }
                 }
             }
         }
 
+        statCache.save();
         Collections.sort(modified);
 
         for (String name : modified) {
@@ -311,18 +435,17 @@ class GitletOperator {
         System.out.println();
     }
 
-    /** Helper function showing Untracked Files part for doStatus. */
-    private void doStatusUntrackedFiles() {
+    /** Helper function showing Untracked Files part for doStatus. The
+     *  working tree is walked and its files checked in parallel.
+     * @param stagedNames -- all staged file names. */
+    private void doStatusUntrackedFiles(ArrayList<String> stagedNames) {
         System.out.println("=== Untracked Files ===");
-        for (File file : getFilesInFile(PATH_WORKING)) {
-            String fileName = file.getName();
-            if (fileName.equals(GITLET_PATH)) {
-                continue;
-            }
-            if (!isEverTracked(fileName) && !_staged.hasFileName(fileName)) {
-                System.out.println(fileName);
-            }
-        }
+        HashSet<String> staged = new HashSet<>(stagedNames);
+        WorkingTree.files()
+                .filter(name -> !staged.contains(name)
+                        && !isEverTracked(name))
+                .sorted()
+                .forEachOrdered(System.out::println);
         System.out.println();
     }
 
@@ -348,7 +471,6 @@ class GitletOperator {
         }
         Branch newBranch = new Branch(branchName);
         newBranch.createBranch();
-        addBranchTo(currentHeadCommit(), branchName);
     }
 
     /** Function for "rm-branch [branch name]".
@@ -362,11 +484,6 @@ class GitletOperator {
         if (!hasBranchName(branchName)) {
             doSystemExit("A branch with that name does not exist.");
         }
-        File commits =
-                new File(PATH_BRANCHES + branchName + "/" + COMMITS_FOLDER);
-        for (String commit : readFrom(commits)) {
-            deleteBranchFrom(commit, branchName);
-        }
         deleteBranch(branchName);
     }
 
@@ -380,7 +497,7 @@ class GitletOperator {
         if (!commit.containsFileName(filename)) {
             doSystemExit("File does not exist in that commit.");
         }
-        _blobs.checkOutByHash(commit.getHashByName(filename));
+        myBlobs().checkOutByHash(commit.getHashByName(filename));
     }
 
     /** Function for "checkout [commit id] -- [file name]".
@@ -400,7 +517,7 @@ class GitletOperator {
         if (!commit.containsFileName(filename)) {
             doSystemExit("File does not exist in that commit.");
         }
-        _blobs.checkOutByHash(commit.getHashByName(filename));
+        myBlobs().checkOutByHash(commit.getHashByName(filename));
     }
 
     /** Function for "checkout [branch name]".
@@ -427,27 +544,18 @@ class GitletOperator {
         if (currentBranch.equals(branchName)) {
             doSystemExit("No need to checkout the current branch.");
         }
+        Commit current = new Commit().restoreCommit(currentHeadCommit());
         rewriteCurrentBranch(branchName);
         Commit commit = new Commit().restoreCommit(currentHeadCommit());
-        for (File file : getFilesInFile(PATH_WORKING)) {
-            String fileName = file.getName();
-            if (!fileName.equals(GITLET_PATH)) {
-                if (!isTrackedByBranch(fileName, currentBranch)) {
-                    if (isTrackedByCommit(fileName, commit.myHash())) {
-                        doSystemExit("There is an untracked file "
-                                + "in the way; delete it or add it first.");
-                    }
-                }
-            }
-        }
-        for (File file : getFilesInFile(PATH_WORKING)) {
-            if (!file.getName().equals(GITLET_PATH)) {
-                deleteFile(file);
-            }
-        }
-        for (String hash : commit.myFiles()) {
-            _blobs.checkOutByHash(hash);
+        if (WorkingTree.files().sequential().anyMatch(fileName ->
+                commit.containsFileName(fileName)
+                && !current.containsFileName(fileName)
+                && !isTrackedByBranch(fileName, currentBranch))) {
+            doSystemExit("There is an untracked file "
+                    + "in the way; delete it or add it first.");
         }
+        myBlobs().checkOut(current.myTree().files(),
+                commit.myTree().files());
     }
 
     /** Function for "reset [commit id]".
@@ -461,36 +569,21 @@ class GitletOperator {
             doSystemExit("No commit with that id exists.");
         }
         String currentBranch = getCurrentBranch();
+        Commit current = new Commit().restoreCommit(currentHeadCommit());
         Commit commit = new Commit().restoreCommit(commitId);
-        for (File file : getFilesInFile(PATH_WORKING)) {
-            String fileName = file.getName();
-            if (!fileName.equals(GITLET_PATH)) {
-                if (!isTrackedByBranch(fileName, currentBranch)) {
-                    if (isTrackedByCommit(fileName, commitId)) {
-                        doSystemExit("There is an untracked file "
-                                + "in the way; delete it or add it first.");
-                    }
-                }
-            }
-        }
-        for (File file : getFilesInFile(PATH_WORKING)) {
-            if (!file.getName().equals(GITLET_PATH)) {
-                if (isTrackedByCommit(file.getName(), commitId)) {
-                    deleteFile(file);
-                }
-            }
-        }
-        for (String hash : commit.myFiles()) {
-            String filename = _blobs.getNameOf(hash);
-            File source = new File(PATH_BLOBS + hash
-                    + CONTENT_FOLDER + filename);
-            File target = new File(PATH_WORKING + filename);
-            copyFiles(source, target);
-        }
+        if (WorkingTree.files().sequential().anyMatch(fileName ->
+                commit.containsFileName(fileName)
+                && !current.containsFileName(fileName)
+                && !isTrackedByBranch(fileName, currentBranch))) {
+            doSystemExit("There is an untracked file "
+                    + "in the way; delete it or add it first.");
+        }
+        myBlobs().checkOut(current.myTree().files(),
+                commit.myTree().files());
         for (String stagedFile : getAllDirectorysFrom(PATH_STAGED)) {
             deleteFile(new File(PATH_STAGED + stagedFile));
         }
-        _branch.changeMyHeadCommitTo(commitId);
+        myBranch().changeMyHeadCommitTo(commitId);
     }
 
     /** Function for "merge [branch name]".
@@ -511,7 +604,7 @@ class GitletOperator {
         Commit splitCommit =
                 new Commit().restoreCommit(splitCommitHash);
         Commit lastCommitOfCurrent =
-                new Commit().restoreCommit(_branch.myLatestCommit());
+                new Commit().restoreCommit(myBranch().myLatestCommit());
         Commit lastCommitOfGiven =
                 new Commit().restoreCommit(givenBranch.myLatestCommit());
 
@@ -528,9 +621,9 @@ class GitletOperator {
                 "Merged %s into %s.",
                 correctOutputPathFormat(givenBranchName),
                 correctOutputPathFormat(currentBranch)));
-        mergedCommit.createCommit(true);
         mergedCommit.tagAsMerged();
         mergedCommit.addParent(lastCommitOfGiven.myHash());
+        mergedCommit.createCommit(true);
 
         conflictOccur = conflictByGiven || conflictBySplit;
 
@@ -546,18 +639,13 @@ class GitletOperator {
                                           String givenBranchName) {
         String[] removed = readFrom(REMOVED_NAMES);
 
-        if (!_staged.isEmpty() || removed.length >= 1) {
+        if (!myStaged().isEmpty() || removed.length >= 1) {
             doSystemExit("You have uncommitted changes.");
         }
-        for (File file : getFilesInFile(PATH_WORKING)) {
-            String fileName = file.getName();
-            if (fileName.equals(GITLET_PATH)) {
-                continue;
-            }
-            if (!isTrackedByBranch(fileName, currentBranch)) {
-                doSystemExit("There is an untracked "
-                        + "file in the way; delete it or add it first.");
-            }
+        if (WorkingTree.files().sequential().anyMatch(fileName ->
+                !isTrackedByBranch(fileName, currentBranch))) {
+            doSystemExit("There is an untracked "
+                    + "file in the way; delete it or add it first.");
         }
         if (!hasBranchName(givenBranchName)) {
             doSystemExit("A branch with that name does not exist.");
@@ -586,13 +674,13 @@ class GitletOperator {
                             + givenBranchName + "/" + COMMITS_FOLDER);
             File target =
                     new File(PATH_BRANCHES
-                            + _branch.myName() + "/" + COMMITS_FOLDER);
+                            + myBranch().myName() + "/" + COMMITS_FOLDER);
             if (target.exists()) {
                 deleteFile(target);
             }
             copyFiles(source, target);
             _branch = new Branch().restoreBranch();
-            _branch.changeMyHeadCommitTo(_branch.myLatestCommit());
+            myBranch().changeMyHeadCommitTo(myBranch().myLatestCommit());
             doSystemExit("Current branch fast-forwarded.");
         }
     }
@@ -607,8 +695,10 @@ class GitletOperator {
                                         Commit lastCommitOfCurrent,
                                         Commit lastCommitOfGiven) {
         boolean conflictOccur = false;
-        for (String fileHash : lastCommitOfGiven.myFiles()) {
-            String fileName = _blobs.getNameOf(fileHash);
+        for (Map.Entry<String, String> file
+                : lastCommitOfGiven.myTree().files().entrySet()) {
+            String fileName = file.getKey();
+            String fileHash = file.getValue();
 
             boolean newFileExistOnlyInGiven =
                     !splitCommit.containsFileName(fileName)
@@ -619,7 +709,7 @@ class GitletOperator {
                 if (fileShouldBeCreated.exists()) {
                     fileShouldBeCreated.delete();
                 }
-                _blobs.checkOutByHash(fileHash);
+                myBlobs().checkOutByHash(fileHash);
                 doAdd(new String[]{fileName});
             }
 
@@ -636,36 +726,13 @@ class GitletOperator {
                             && !lastCommitOfCurrent.containsFileHash(fileHash);
             if (existedButModifiedInDiffWays
                     || newFileButModifiedInDiffWays) {
-                conflictOccur = true;
-                doConflictContionOne(fileName,
-                        fileHash, lastCommitOfCurrent);
+                conflictOccur |= doMergeLines(fileName, splitCommit,
+                        lastCommitOfCurrent, lastCommitOfGiven);
             }
         }
         return conflictOccur;
     }
 
-    /** Helper for doCheckBySplitCommitSide, operate when a conflict
-     *  that given and current modified in different ways.
-     *  @param fileName -- file name
-     *  @param fileHash -- file hash
-     *  @param lastCommitOfCurrent -- lastCommitOfCurrent */
-    private void doConflictContionOne(String fileName,
-                                      String fileHash,
-                                      Commit lastCommitOfCurrent) {
-        writeInto(PATH_WORKING + fileName, false, "<<<<<<< HEAD");
-        String currentFileHash =
-                lastCommitOfCurrent.getHashByName(fileName);
-        writeInto(PATH_WORKING + fileName, true,
-                readFrom(PATH_BLOBS + currentFileHash
-                        + CONTENT_FOLDER + fileName));
-        writeInto(PATH_WORKING + fileName, true, "=======");
-        writeInto(PATH_WORKING + fileName, true,
-                readFrom(PATH_BLOBS + fileHash
-                        + CONTENT_FOLDER + fileName));
-        writeInto(PATH_WORKING + fileName, true, ">>>>>>>");
-        doAdd(new String[] {fileName});
-    }
-
     /** Helper function for doMerge.
      * Checking merge conditions by given branch's side.
      * @param splitCommit -- splitCommit
@@ -676,8 +743,10 @@ class GitletOperator {
                                            Commit lastCommitOfCurrent,
                                            Commit lastCommitOfGiven) {
         boolean conflictOccur = false;
-        for (String fileHash : splitCommit.myFiles()) {
-            String fileName = _blobs.getNameOf(fileHash);
+        for (Map.Entry<String, String> file
+                : splitCommit.myTree().files().entrySet()) {
+            String fileName = file.getKey();
+            String fileHash = file.getValue();
 
             boolean existedButModifiedGivenAndUnchangedCurr =
                     lastCommitOfGiven.containsFileName(fileName)
@@ -690,7 +759,7 @@ class GitletOperator {
                 if (fileShouldBeUpdated.exists()) {
                     fileShouldBeUpdated.delete();
                 }
-                _blobs.checkOutByHash(
+                myBlobs().checkOutByHash(
                         lastCommitOfGiven.getHashByName(fileName));
                 doAdd(new String[] {fileName});
             }
@@ -712,52 +781,48 @@ class GitletOperator {
                             && !lastCommitOfCurrent.containsFileHash(fileHash);
             if (existedButCurrModifedAndGivenDeleted
                     || existedButGivenModifedAndCurrDeleted) {
-                conflictOccur = true;
-                doConflictContionTwo(fileName,
+                conflictOccur |= doMergeLines(fileName, splitCommit,
                         lastCommitOfCurrent, lastCommitOfGiven);
             }
         }
         return conflictOccur;
     }
 
-    /** Helper for doCheckBySplitCommitSide, operate when a conflict
-     *  that one is modified and one deleted occurs.
+    /** Helper for the merge checks, operate when current and given both
+     *  changed a file: merge their changes line by line into the working
+     *  file and stage it. Only the lines both changed, differently, are
+     *  marked as a conflict; a side missing the file counts as empty.
      *  @param fileName -- file name
+     *  @param splitCommit -- splitCommit
      *  @param lastCommitOfCurrent -- lastCommitOfCurrent
-     *  @param lastCommitOfGiven -- lastCommitOfGiven */
-    private void doConflictContionTwo(String fileName,
-                                      Commit lastCommitOfCurrent,
-                                      Commit lastCommitOfGiven) {
-        File conflictFile = new File(PATH_WORKING + fileName);
-        if (!conflictFile.exists()) {
-            try {
-                conflictFile.createNewFile();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
-        writeInto(PATH_WORKING + fileName, false, "<<<<<<< HEAD");
-        if (lastCommitOfCurrent.containsFileName(fileName)) {
-            String currentHash =
-                    lastCommitOfCurrent.getHashByName(fileName);
-            writeInto(PATH_WORKING + fileName, true,
-                    readFrom(PATH_BLOBS + currentHash
-                            + CONTENT_FOLDER + fileName));
-            writeInto(PATH_WORKING + fileName, true, "=======");
-        } else {
-            writeInto(PATH_WORKING + fileName, true, "=======");
-        }
-        if (lastCommitOfGiven.containsFileName(fileName)) {
-            String givenHash =
-                    lastCommitOfGiven.getHashByName(fileName);
-            writeInto(PATH_WORKING + fileName, true,
-                    readFrom(PATH_BLOBS + givenHash
-                            + CONTENT_FOLDER + fileName));
-            writeInto(PATH_WORKING + fileName, true, ">>>>>>>");
-        } else {
-            writeInto(PATH_WORKING + fileName, true, ">>>>>>>");
+     *  @param lastCommitOfGiven -- lastCommitOfGiven
+     *  @return -- if a conflict is marked. */
+    private boolean doMergeLines(String fileName, Commit splitCommit,
+                                 Commit lastCommitOfCurrent,
+                                 Commit lastCommitOfGiven) {
+        boolean conflict = false;
+        try (OutputStream out = new BufferedOutputStream(
+                new FileOutputStream(workingFile(fileName)))) {
+            conflict = Diff.merge(textOf(splitCommit, fileName),
+                    textOf(lastCommitOfCurrent, fileName),
+                    textOf(lastCommitOfGiven, fileName), out);
+        } catch (IOException e) {
+            e.printStackTrace();
         }
         doAdd(new String[] {fileName});
+        return conflict;
+    }
+
+    /** Lines of a file as tracked by a commit.
+     * @param commit -- commit
+     * @param fileName -- file name
+     * @return -- its lines, none if the commit lacks the file. */
+    private static Diff.Text textOf(Commit commit, String fileName) {
+        String hash = commit.getHashByName(fileName);
+        if (hash == null) {
+            return new Diff.Text(ByteBuffer.allocate(0));
+        }
+        return new Diff.Text(myBlobs().bufferOf(hash));
     }
 
     /** Function for add-remote [remote name] [name of remote]/.gitlet.
@@ -797,6 +862,7 @@ class GitletOperator {
         if (!new File(remoteDirectory + GITLET_PATH).exists()) {
             doSystemExit("Remote directory not found.");
         }
+        Lock.acquire(remoteDirectory + PATH_LOCK, false);
 
         Remote remote = new Remote(remoteName, remoteDirectory);
 
@@ -807,17 +873,13 @@ class GitletOperator {
         remote.chooseBranch(remoteBranchName);
         String remoteHead = remote.myHeadCommit();
 
-        if (!_branch.hasCommit(remoteHead)) {
+        int remoteHeadIndex = _graph.indexOf(remoteHead);
+        if (remoteHeadIndex < 0 || !_graph.isAncestor(remoteHeadIndex,
+                _graph.indexOf(currentHeadCommit()))) {
             doSystemExit("Please pull down remote changes before pushing.");
         }
 
-        Commit localCommit = new Commit().restoreCommit(currentHeadCommit());
-
-        while (!localCommit.myHash().equals(remoteHead)) {
-            remote.addCommit(localCommit);
-            localCommit =
-                    new Commit().restoreCommit(localCommit.myParents()[0]);
-        }
+        remote.push(currentHeadCommit());
     }
 
     /** Function for fetch [remote name] [remote branch name].
@@ -834,6 +896,7 @@ class GitletOperator {
         if (!new File(remoteDirectory + GITLET_PATH).exists()) {
             doSystemExit("Remote directory not found.");
         }
+        Lock.acquire(remoteDirectory + PATH_LOCK, true);
 
         Remote remote = new Remote(remoteName, remoteDirectory);
 
@@ -847,32 +910,16 @@ class GitletOperator {
         }
 
         Branch fetchedBranch = new Branch().restoreBranch(fetchedBranchName);
-        for (String commit : remote.myCommits()) {
-            Commit remoteCommit =
-                    new Commit().restoreRemoteCommit(remoteDirectory, commit);
-            String remoteCommitHash = remoteCommit.myHash();
-            if (!existCommit(remoteCommitHash)) {
-                fetchedBranch.addCommit(remoteCommitHash);
-                fetchedBranch.changeMyHeadCommitTo(remoteCommitHash);
-
-                File sourceCommit =
-                        new File(remoteDirectory + PATH_COMMITS
-                                + remoteCommitHash);
-                File targetCommit =
-                        new File(PATH_COMMITS + remoteCommitHash);
-                copyFiles(sourceCommit, targetCommit);
-
-                for (String file : remoteCommit.myFiles()) {
-                    if (!_blobs.hasFileHash(file)) {
-                        File sourceFile =
-                                new File(remoteDirectory + PATH_BLOBS + file);
-                        File targetFile =
-                                new File(PATH_BLOBS + file);
-                        copyFiles(sourceFile, targetFile);
-                    }
-                }
-            }
+        remote.chooseBranch(remoteBranchName);
+        String remoteHead = remote.myHeadCommit();
+        for (Commit commit : remote.fetch(remoteHead)) {
+            fetchedBranch.addCommit(commit.myHash());
+        }
+        if (!remoteHead.equals(fetchedBranch.myLatestCommit())) {
+            fetchedBranch.addCommit(remoteHead);
         }
+        fetchedBranch.changeMyHeadCommitTo(remoteHead);
+        _graph.add(remoteHead);
     }
 
     /** Function for pull [remote name] [remote branch name].
@@ -887,6 +934,59 @@ class GitletOperator {
 
     }
 
+    /** Function for "migrate". Moves loose commits and blobs
+     *  (one directory each) into the pack.
+     * @param unused -- unused */
+    private void doMigrate(String[] unused) {
+        doTest(unused);
+        ArrayList<String> blobs = getAllDirectorysFrom(PATH_BLOBS);
+        ArrayList<String> commits = getAllDirectorysFrom(PATH_COMMITS);
+        _pack.batch();
+        for (String hash : blobs) {
+            Blob.copyBlob("", _pack, hash);
+        }
+        for (String hash : commits) {
+            Commit commit = new Commit().restoreCommit(hash);
+            _pack.write(Pack.COMMIT, hash, commit.encode());
+        }
+        _pack.flush();
+        for (String hash : blobs) {
+            deleteFile(new File(PATH_BLOBS + hash));
+        }
+        for (String hash : commits) {
+            deleteFile(new File(PATH_COMMITS + hash));
+        }
+        _graph.rebuild();
+    }
+
+    /** Function for "gc": delete what no branch reaches, repack the
+     *  rest and rebuild the commit graph and message index over it.
+     * @param unused -- unused */
+    private void doGc(String[] unused) {
+        doTest(unused);
+        Collector collector = new Collector();
+        collector.mark();
+        collector.sweep();
+        forgetRepository();
+        _pack = new Pack();
+        _graph.rebuild();
+        System.out.println(String.format("Reclaimed %d bytes and %d inodes.",
+                collector.bytesReclaimed(), collector.inodesReclaimed()));
+    }
+
+    /** Function for "chunking [on|off]": whether files committed from
+     *  now on are cut into chunks when large. Blobs already stored are
+     *  left as they are.
+     * @param operands -- "on" or "off" */
+    private void doChunking(String[] operands) {
+        doTest(operands);
+        if (operands[0].equals("off")) {
+            deleteFile(new File(PATH_CHUNKING));
+        } else {
+            writeInto(PATH_CHUNKING, false, "on");
+        }
+    }
+
     /** Function for "help".
      * @param unused -- unused */
     private void doHelp(String[] unused) {
@@ -943,12 +1043,7 @@ class GitletOperator {
     /** Clear a file.
      * @param file -- file path */
     static void clearFile(String file) {
-        try {
-            PrintWriter pw = new PrintWriter(file);
-            pw.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        writeInto(file, false);
     }
 
     /** Clear a file with input "File".
@@ -965,27 +1060,35 @@ class GitletOperator {
         writeInto(file.getPath(), ifAppend, strs);
     }
 
-    /** Convenience for writing objects into file.
+    /** Convenience for writing objects into file. Writes into .gitlet
+     *  land with the other writes of the command, when the journal
+     *  commits.
      * @param file -- file path
      * @param ifAppend -- if append or overwrite
      * @param strs -- content */
     static void writeInto(String file, boolean ifAppend, String... strs) {
-        try {
-            FileWriter fw = new FileWriter(file, ifAppend);
-            BufferedWriter bw = new BufferedWriter(fw);
-            if (strs != null) {
+        if (!Journal.covers(file)) {
+            try (BufferedWriter bw = new BufferedWriter(
+                    new FileWriter(file, ifAppend))) {
+                Trace.fileOpened();
+                if (strs == null) {
+                    return;
+                }
                 for (String str : strs) {
                     if (str != null) {
                         bw.write(str);
                         bw.newLine();
                     }
                 }
-                bw.flush();
-                bw.close();
+            } catch (IOException e) {
+                e.printStackTrace();
             }
-        } catch (IOException e) {
-            e.printStackTrace();
+            return;
         }
+        if (ifAppend && _journal.read(file) == null) {
+            _journal.write(file, false, readFrom(file));
+        }
+        _journal.write(file, ifAppend, strs);
     }
 
     /** readFrom with input as "File".
@@ -999,10 +1102,15 @@ class GitletOperator {
      * @param file -- file path
      * @return -- content*/
     static String[] readFrom(String file) {
+        String[] pending = _journal.read(file);
+        if (pending != null) {
+            return pending;
+        }
         ArrayList<String> lst = new ArrayList<>();
         String strLine;
         try {
             FileInputStream fstream = new FileInputStream(file);
+            Trace.fileOpened();
             InputStreamReader istream = new InputStreamReader(fstream);
             BufferedReader br = new BufferedReader(istream);
             while ((strLine = br.readLine()) != null)   {
@@ -1043,29 +1151,44 @@ class GitletOperator {
         }
     }
 
-    /** Copy Plain files form source to target.
+    /** Copy Plain files form source to target. The bytes go from one
+     *  channel to the other inside the kernel, never through the heap.
      * @param source -- source File
      * @param target -- target File */
     private static void copyPlains(File source, File target) {
-        try {
-            InputStream instream = new FileInputStream(source);
-            OutputStream outstream = new FileOutputStream(target);
-
-            byte[] buf = new byte[PACE];
-            int length;
-            while ((length = instream.read(buf)) > 0) {
-                outstream.write(buf, 0, length);
+        try (FileChannel in = FileChannel.open(source.toPath(),
+                StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target.toPath(),
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                position += in.transferTo(position, size - position, out);
             }
-            instream.close();
-            outstream.close();
         } catch (IOException e) {
             e.printStackTrace();
         }
     }
 
+    /** Map a file into memory for reading.
+     * @param file -- File
+     * @return -- its content, empty if it cannot be read. */
+    static ByteBuffer mapFile(File file) {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY,
+                    0, channel.size());
+        } catch (IOException e) {
+            e.printStackTrace();
+            return ByteBuffer.allocate(0);
+        }
+    }
+
     /** Delete files and directories for doClean.
      * @param file -- File */
     static void deleteFile(File file) {
+        _journal.forget(file);
         if (file.isDirectory()) {
             File[] subFiles = file.listFiles();
             if (subFiles != null) {
@@ -1097,97 +1220,76 @@ class GitletOperator {
     /** Check the existence of a commit with id.
      * @param id -- hash of the commit.
      * @return -- check result. */
-    private boolean existCommit(String id) {
-        for (String hash : getAllDirectorysFrom(PATH_COMMITS)) {
-            if (hash.equals(id)) {
-                return true;
-            }
+    static boolean existCommit(String id) {
+        return _pack.mayHold(id) && (_pack.contains(id)
+                || new File(PATH_COMMITS + id).isDirectory());
+    }
+
+    /** Get hashs of the commits matching a message. Candidates come from
+     *  the message index and are checked against their message; without
+     *  an index every commit is checked.
+     * @param message -- message to be searched
+     * @param option -- null for equal messages, WORD_OPTION for messages
+     *                  using all its words, CONTAINS_OPTION for messages
+     *                  containing it
+     * @return -- commits' hashes as a searched result. */
+    private ArrayList<String> getCommitsWithMsg(String message,
+                                                String option) {
+        ArrayList<String> words = MessageIndex.wordsOf(message);
+        Predicate<String> matches;
+        if (option == null) {
+            matches = message::equals;
+        } else if (option.equals(WORD_OPTION)) {
+            matches = msg -> !words.isEmpty()
+                    && MessageIndex.wordsOf(msg).containsAll(words);
+        } else {
+            matches = msg -> msg.contains(message);
         }
-        return false;
-    }
 
-    /** Search if there is a commit in .gitlet/Commits with the message.
-     * @param message -- message to be searched.
-     * @return -- check result. */
-    private boolean hasCommitWithMsg(String message) {
-        for (String commitHash : getAllDirectorysFrom(PATH_COMMITS)) {
-            Commit commit = new Commit().restoreCommit(commitHash);
-            if (commit.myMessage().equals(message)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
-    /** Add branch to the commit.
-     * @param hash -- hash of the commit
-     * @param branch -- name of the branch. */
-    private void addBranchTo(String hash, String branch) {
-        writeInto(PATH_COMMITS + hash + "/" + BRANCHES_FOLDER,
-                true, branch);
-    }
-
-    /** Delete branch from the commit.
-     * @param hash -- hash of the commit
-     * @param branch -- name of the branch. */
-    private void deleteBranchFrom(String hash, String branch) {
-        File commit = new File(PATH_COMMITS + hash + "/"
-                + BRANCHES_FOLDER);
-        String[] currentBranchs = readFrom(commit);
-        clearFile(commit);
-        for (String currentbranch : currentBranchs) {
-            if (!currentbranch.equals(branch)) {
-                writeInto(commit, true, currentbranch);
-            }
+        ArrayList<String> candidates;
+        if (!myMessages().exists()) {
+            candidates = _graph.all();
+        } else if (option != null && option.equals(CONTAINS_OPTION)) {
+            candidates = myMessages().containing(message);
+        } else {
+            candidates = myMessages().candidates(message);
         }
-    }
-
-    /** Get hashs of the commit with the message.
-     * @param message -- message to be searched.
-     * @return -- commits' hashes as a searched result. */
-    private ArrayList<String> getCommitsWithMsg(String message) {
         ArrayList<String> result = new ArrayList<>();
-        for (String commitHash : getAllDirectorysFrom(PATH_COMMITS)) {
-            Commit commit = new Commit().restoreCommit(commitHash);
-            if (commit.myMessage().equals(message)) {
+        for (String commitHash : candidates) {
+            Commit commit = _graph.get(commitHash);
+            if (matches.test(commit.myMessage())) {
                 result.add(commitHash);
             }
         }
         return result;
     }
 
-    /** Restore a Commit with 7-digit id. Assume exist.
+    /** Restore a Commit with 7-digit id. Exits if more than one commit
+     *  starts with the id, rather than guessing.
      * @param id -- 7-digit version commit id.
-     * @return -- full length version of the id. */
+     * @return -- full length version of the id, null if none. */
     private String fullLengthIdOf(String id) {
-        String fullId = null;
-        int length = id.length();
+        TreeSet<String> found =
+                new TreeSet<>(_pack.withPrefix(id, Pack.COMMIT));
         for (String hash : getAllDirectorysFrom(PATH_COMMITS)) {
-            String partHash = hash.substring(0, length);
-            if (partHash.equals(id)) {
-                fullId = hash;
+            if (hash.startsWith(id)) {
+                found.add(hash);
             }
         }
-        return fullId;
+        if (found.size() > 1) {
+            doSystemExit("Commit id " + id + " is ambiguous.");
+        }
+        return found.isEmpty() ? null : found.first();
     }
 
-    /** Check if a file name is tracked by the commit. Assume exist commit.
+    /** Check if a file name is tracked by the commit: a binary search in
+     *  its tree.
      * @param filename -- file name
      * @param commitHash -- commit hash
      * @return check result. */
     private boolean isTrackedByCommit(String filename, String commitHash) {
-        String[] filesInCommit = readFrom(PATH_COMMITS
-                + commitHash + "/" + FILES_FOLDER);
-        if (filesInCommit == null) {
-            return false;
-        }
-        for (String commitFile : filesInCommit) {
-            String commitFileName = _blobs.getNameOf(commitFile);
-            if (commitFileName.equals(filename)) {
-                return true;
-            }
-        }
-        return false;
+        Commit commit = _graph.get(commitHash);
+        return commit != null && commit.containsFileName(filename);
     }
 
     /* **********************************
@@ -1198,12 +1300,7 @@ class GitletOperator {
      * @param branchName -- input.
      * @return -- check result. */
     private boolean hasBranchName(String branchName) {
-        for (String branch : getAllDirectorysFrom(PATH_BRANCHES)) {
-            if (branch.equals(branchName)) {
-                return true;
-            }
-        }
-        return false;
+        return new File(PATH_BRANCHES + branchName).isDirectory();
     }
 
     /** Delete branch.
@@ -1217,8 +1314,11 @@ class GitletOperator {
      * @param fileName -- input
      * @return -- check result. */
     private boolean isEverTracked(String fileName) {
+        if (!_pack.blobsNamed(fileName).isEmpty()) {
+            return true;
+        }
         for (String fileHash : getAllDirectorysFrom(PATH_BLOBS)) {
-            if (_blobs.getNameOf(fileHash).equals(fileName)) {
+            if (myBlobs().getNameOf(fileHash).equals(fileName)) {
                 return true;
             }
         }
@@ -1239,7 +1339,7 @@ class GitletOperator {
             return false;
         }
         for (String commitHash : commits) {
-            Commit commit = new Commit().restoreCommit(commitHash);
+            Commit commit = _graph.get(commitHash);
             if (commit.containsFileName(filename)) {
                 return true;
             }
@@ -1247,26 +1347,16 @@ class GitletOperator {
         return false;
     }
 
-    /** Get the split commit of the two branches.
+    /** Get the split commit of the two branches, their latest common
+     *  ancestor in the commit graph.
      * @param branchName1 -- branch name of the first branch as input.
      * @param branchName2 -- branch name of the second branch as input.
      * @return -- the hash of the split commit of the two branches. */
     private String getSplitCommit(String branchName1, String branchName2) {
         Branch branch1 = new Branch().restoreBranch(branchName1);
-        String commitHash1 = branch1.myLatestCommit();
-
-        while (true) {
-            Commit commit1 = new Commit().restoreCommit(commitHash1);
-            if (commit1.containsBranch(branchName2) && !commit1.isMerged()) {
-                return commit1.myHash();
-            }
-            if (commit1.hasParents()) {
-                commitHash1 = commit1.myParents()[0];
-            } else {
-                break;
-            }
-        }
-        return null;
+        Branch branch2 = new Branch().restoreBranch(branchName2);
+        return _graph.mergeBase(branch1.myLatestCommit(),
+                branch2.myLatestCommit());
     }
 
     /* **********************************
@@ -1293,12 +1383,14 @@ class GitletOperator {
      * @param remoteName -- remote name. */
     void deleteRemote(String remoteName) {
         HashMap<String, String> remoteList = getRemoteList();
-        clearFile(REMOTE_LIST);
+        ArrayList<String> lines = new ArrayList<>();
         for (String key : remoteList.keySet()) {
             if (!key.equals(remoteName)) {
-                writeInto(REMOTE_LIST, true, key, remoteList.get(key));
+                lines.add(key);
+                lines.add(remoteList.get(key));
             }
         }
+        writeInto(REMOTE_LIST, false, doListToStrings(lines));
     }
 
     /** Change directory separator to proper ones for the operating system.
@@ -1356,13 +1448,33 @@ class GitletOperator {
     /** Get the current(head) commit for current branch.
      * @return -- current head commit */
     static String currentHeadCommit() {
-        return _branch.myHeadCommit();
+        return myBranch().myHeadCommit();
     }
 
-    /** Delete from Working directory.
+    /** Delete from Working directory, along with the directories it
+     *  leaves empty.
      * @param filename -- file name */
-    private static void deleteFromWorking(String filename) {
-        new File(PATH_WORKING + filename).delete();
+    static void deleteFromWorking(String filename) {
+        File file = new File(PATH_WORKING + filename);
+        file.delete();
+        File parent = file.getParentFile();
+        while (parent != null && !parent.equals(new File(PATH_WORKING))
+                && parent.delete()) {
+            parent = parent.getParentFile();
+        }
+    }
+
+    /** Get a file of Working directory to write, making the directories
+     *  it sits in.
+     * @param filename -- file name
+     * @return -- the file. */
+    static File workingFile(String filename) {
+        File file = new File(PATH_WORKING + filename);
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory()) {
+            parent.mkdirs();
+        }
+        return file;
     }
 
     /* **********************************
@@ -1423,7 +1535,12 @@ class GitletOperator {
     /** Make system exit with a message.
      * @param msg -- message */
     static void doSystemExit(String msg) {
+        _journal.commit();
         System.out.println(msg);
+        Trace.finish();
+        if (Daemon.isServing()) {
+            throw new Daemon.Exit();
+        }
         System.exit(0);
     }
 
@@ -1436,6 +1553,7 @@ class GitletOperator {
         COMMANDS.put(RM, this::doRm);
         COMMANDS.put(LOG, this::doLog);
         COMMANDS.put(GLOBALLOG, this::doGlobalLog);
+        COMMANDS.put(DIFF, this::doDiff);
         COMMANDS.put(STATUS, this::doStatus);
         COMMANDS.put(BRANCH, this::doBranch);
         COMMANDS.put(RMBRANCH, this::doRmBranch);
@@ -1449,6 +1567,9 @@ class GitletOperator {
         COMMANDS.put(PUSH, this::doPush);
         COMMANDS.put(FETCH, this::doFetch);
         COMMANDS.put(PULL, this::doPull);
+        COMMANDS.put(MIGRATE, this::doMigrate);
+        COMMANDS.put(GC, this::doGc);
+        COMMANDS.put(CHUNKING, this::doChunking);
         COMMANDS.put(CLEAN, this::doClean);
         COMMANDS.put(HELP, this::doHelp);
         COMMANDS.put(ERROR, this::doError);
@@ -1457,8 +1578,11 @@ class GitletOperator {
 
 
     /** My Current Branch.
-     * @return -- _branch. */
+     * @return -- _branch, restored on first use. */
     static Branch myBranch() {
+        if (_branch == null) {
+            _branch = new Branch().restoreBranch();
+        }
         return _branch;
     }
 
@@ -1471,48 +1595,106 @@ class GitletOperator {
     /** Add Commit to Current Branch.
      * @param commitId -- commit to be added. */
     static void addCommitToMyBranch(String commitId) {
-        _branch.addCommit(commitId);
+        myBranch().addCommit(commitId);
     }
 
     /** Change Head Commit for Current Branch.
      * @param commitId -- head commit to be set. */
     static void changeHeadCommitForMyBranch(String commitId) {
-        _branch.changeMyHeadCommitTo(commitId);
+        myBranch().changeMyHeadCommitTo(commitId);
     }
 
     /** My Staged Area.
-     * @return -- _staged. */
+     * @return -- _staged, loaded on first use. */
     static Staged myStaged() {
+        if (_staged == null) {
+            _staged = new Staged();
+        }
         return _staged;
     }
 
     /** Clear Removed Files for My Staged. */
     static void clearRemovedInMyStaged() {
-        _staged.clearRemovedFiles();
+        myStaged().clearRemovedFiles();
     }
 
     /** Delete by Name in My Staged.
      * @param fileName -- file name to be deleted. */
     static void deleteByNameInMyStaged(String fileName) {
-        _staged.deleteByName(fileName);
+        myStaged().deleteByName(fileName);
     }
 
     /** Delete by Hash in My Staged.
      * @param fileHash -- file hash to be deleted. */
     static void deleteByHashInMyStaged(String fileHash) {
-        _staged.deleteByHash(fileHash);
+        myStaged().deleteByHash(fileHash);
+    }
+
+    /** My Stat Cache, loaded on first use.
+     * @return -- _statCache. */
+    static StatCache myStatCache() {
+        if (_statCache == null) {
+            _statCache = new StatCache();
+        }
+        return _statCache;
+    }
+
+    /** Forget the stat cache, so it is loaded again on next use. */
+    static void forgetStatCache() {
+        _statCache = null;
+    }
+
+    /** My Message Index, mapped on first use.
+     * @return -- _messages. */
+    static MessageIndex myMessages() {
+        if (_messages == null) {
+            _messages = new MessageIndex();
+        }
+        return _messages;
+    }
+
+    /** Forget the pack, with the trees restored from it, the blobs and
+     *  the commit graph kept from earlier commands, so they are read
+     *  again from .gitlet. */
+    static void forgetRepository() {
+        _pack = null;
+        _blobs = null;
+        _messages = null;
+        _graph.invalidate();
+        _statCache = null;
+    }
+
+    /** My Journal.
+     * @return -- _journal. */
+    static Journal myJournal() {
+        return _journal;
+    }
+
+    /** My Pack.
+     * @return -- _pack. */
+    static Pack myPack() {
+        return _pack;
+    }
+
+    /** My Commit Graph.
+     * @return -- _graph. */
+    static CommitGraph myGraph() {
+        return _graph;
     }
 
     /** My Blob Area.
-     * @return -- _blobs. */
+     * @return -- _blobs, made on first use. */
     static Blob myBlobs() {
+        if (_blobs == null) {
+            _blobs = new Blob();
+        }
         return _blobs;
     }
 
     /** Add File to Blobs.
      * @param fileHash -- file hash in Staged to be added. */
     static void addFileToBlobs(String fileHash) {
-        _blobs.add(fileHash);
+        myBlobs().add(fileHash);
     }
 
     /** The user input command and operands as a String. */
@@ -1523,11 +1705,25 @@ class GitletOperator {
     private static Staged _staged;
     /** The current Blobs Area. */
     private static Blob _blobs;
-
-    /** Pace for the method copyFile. */
-    private static final int PACE = 1024;
+    /** The pack holding committed objects. */
+    private static Pack _pack;
+    /** Commits restored so far in this run. */
+    private static CommitGraph _graph = new CommitGraph();
+    /** Index of commit messages, null until used. */
+    private static MessageIndex _messages;
+    /** Stat cache of working files, null until used. */
+    private static StatCache _statCache;
+    /** Pending writes of metadata files in this run. */
+    private static Journal _journal =
+            new Journal(GitletOperator.PATH_JOURNAL);
+
+    /** Characters that make an operand of add a glob. */
+    private static final String GLOB_CHARS = "*?[{";
+    /** Options of find. */
+    static final String WORD_OPTION = "--word",
+            CONTAINS_OPTION = "--contains";
     /** The File name of the directory that saves Gitlet System files. */
-    private static final String GITLET_PATH = ".gitlet";
+    static final String GITLET_PATH = ".gitlet";
     /** Default Date Format. */
     static final DateFormat DATE_FORMAT =
             new SimpleDateFormat("EEE MMM dd HH:mm:ss yyyy Z");
@@ -1539,10 +1735,24 @@ class GitletOperator {
 
     /** Convenience for directory on Working Area. */
     static final String PATH_WORKING = "./";
+    /** Convenience for the ignore patterns, ./.gitletignore. */
+    static final String PATH_IGNORE = PATH_WORKING + ".gitletignore";
     /** Convenience for directory on .gitlet/Commits. */
     static final String PATH_COMMITS = GITLET_PATH + "/" + "Commits/";
     /** Convenience for directory on .gitlet/Blobs/. */
     static final String PATH_BLOBS = GITLET_PATH + "/" + "Blobs/";
+    /** Convenience for the daemon socket .gitlet/daemon.sock. */
+    static final String PATH_SOCKET = GITLET_PATH + "/" + "daemon.sock";
+    /** Convenience for the journal file .gitlet/journal. */
+    static final String PATH_JOURNAL = GITLET_PATH + "/" + "journal";
+    /** Convenience for the repository lock file .gitlet/lock. */
+    static final String PATH_LOCK = GITLET_PATH + "/" + "lock";
+    /** Convenience for the marker of chunking, .gitlet/chunking. */
+    static final String PATH_CHUNKING = GITLET_PATH + "/" + "chunking";
+    /** Convenience for the stat cache file .gitlet/index. */
+    static final String PATH_INDEX = GITLET_PATH + "/" + "index";
+    /** Convenience for directory on .gitlet/Pack/. */
+    static final String PATH_PACK = GITLET_PATH + "/" + "Pack/";
     /** Convenience for directory on .gitlet/Staged/. */
     static final String PATH_STAGED = GITLET_PATH + "/" + "Staged/";
     /** Convenience for directory on .gitlet/Branches/. */
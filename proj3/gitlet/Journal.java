@@ -0,0 +1,272 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.EOFException;
+import java.io.Writer;
+import java.io.OutputStreamWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** Write-ahead journal for the text files of .gitlet. Writes made while
+ *  a command runs are only kept in memory, and reads see them. At the end
+ *  of the command all of them are first written into .gitlet/journal and
+ *  synced, then every file is replaced by a synced temporary copy, and the
+ *  journal is deleted. A journal left behind by a crash is replayed on the
+ *  next run, so a command's writes land either all or not at all.
+ *  @author Shixuan (Wayne) Li
+ */
+class Journal {
+
+    /** Journal kept in FILE.
+     * @param file -- path of the journal. */
+    Journal(String file) {
+        _myFile = new File(file);
+    }
+
+    /* **********************************
+     *              Methods             *
+     ********************************** */
+
+    /** Check if writes into a file go through the journal: those into
+     *  .gitlet of any repository, not into working files.
+     * @param file -- file path
+     * @return -- check result. */
+    static boolean covers(String file) {
+        for (Path part : new File(file).toPath()) {
+            if (part.toString().equals(GITLET_FOLDER)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Get the pending content of a file.
+     * @param file -- file path
+     * @return -- the lines, or null if the file has no pending write. */
+    String[] read(String file) {
+        ArrayList<String> lines = _pending.get(keyOf(file));
+        if (lines == null) {
+            return null;
+        }
+        return lines.toArray(new String[0]);
+    }
+
+    /** Write lines into a file, at the end of the command.
+     * @param file -- file path
+     * @param ifAppend -- if append to the pending content or overwrite
+     * @param strs -- lines, null ones skipped. */
+    void write(String file, boolean ifAppend, String... strs) {
+        String key = keyOf(file);
+        ArrayList<String> lines = _pending.get(key);
+        if (lines == null || !ifAppend) {
+            lines = new ArrayList<>();
+            _pending.put(key, lines);
+        }
+        if (strs != null) {
+            for (String str : strs) {
+                if (str != null) {
+                    lines.add(str);
+                }
+            }
+        }
+    }
+
+    /** Drop pending writes into FILE and anything under it, as it is
+     *  being deleted.
+     * @param file -- file or directory. */
+    void forget(File file) {
+        String key = keyOf(file.getPath());
+        Iterator<String> keys = _pending.keySet().iterator();
+        while (keys.hasNext()) {
+            String path = keys.next();
+            if (path.equals(key) || path.startsWith(key + File.separator)) {
+                keys.remove();
+            }
+        }
+    }
+
+    /** Put all pending writes in place. A single file only needs an
+     *  atomic rename; more than one goes through the journal first. */
+    void commit() {
+        if (_pending.isEmpty()) {
+            return;
+        }
+        boolean journaled = _pending.size() > 1
+                && _myFile.getParentFile().isDirectory();
+        try {
+            if (journaled) {
+                writeJournal();
+            }
+            apply(_pending);
+            if (journaled) {
+                Files.delete(_myFile.toPath());
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        _pending.clear();
+    }
+
+    /** Drop all pending writes. */
+    void clear() {
+        _pending.clear();
+    }
+
+    /** Replay a journal left behind by a crash. A journal cut short was
+     *  never applied, so it is just dropped. */
+    void recover() {
+        if (!_myFile.exists()) {
+            return;
+        }
+        LinkedHashMap<String, ArrayList<String>> files = readJournal();
+        try {
+            if (files != null) {
+                apply(files);
+            }
+            Files.delete(_myFile.toPath());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /* **********************************
+     *         Journal-Handling         *
+     ********************************** */
+
+    /** Write and sync the journal: file count, then path, line count and
+     *  lines of each file, then the end mark.
+     * @throws IOException -- if writing fails. */
+    private void writeJournal() throws IOException {
+        FileOutputStream stream = new FileOutputStream(_myFile);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(stream))) {
+            out.writeInt(_pending.size());
+            for (Map.Entry<String, ArrayList<String>> file
+                    : _pending.entrySet()) {
+                out.writeUTF(file.getKey());
+                out.writeInt(file.getValue().size());
+                for (String line : file.getValue()) {
+                    out.writeUTF(line);
+                }
+            }
+            out.writeInt(END_MARK);
+            out.flush();
+            stream.getFD().sync();
+        }
+        syncDirectory(_myFile.getParentFile());
+    }
+
+    /** Read a journal written by writeJournal.
+     * @return -- lines by file path, or null if the journal is cut short. */
+    private LinkedHashMap<String, ArrayList<String>> readJournal() {
+        LinkedHashMap<String, ArrayList<String>> result =
+                new LinkedHashMap<>();
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new FileInputStream(_myFile)))) {
+            int count = in.readInt();
+            for (int i = 0; i < count; i += 1) {
+                String path = in.readUTF();
+                ArrayList<String> lines = new ArrayList<>();
+                for (int j = in.readInt(); j > 0; j -= 1) {
+                    lines.add(in.readUTF());
+                }
+                result.put(path, lines);
+            }
+            if (in.readInt() != END_MARK) {
+                return null;
+            }
+        } catch (EOFException e) {
+            return null;
+        } catch (IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+        return result;
+    }
+
+    /** Replace each file by a synced temporary copy of its new content.
+     *  Files whose directory is gone are skipped. The copies are named
+     *  after the process, as readers sharing the repository lock may
+     *  rewrite the stat cache at the same time.
+     * @param files -- lines by file path
+     * @throws IOException -- if writing fails. */
+    private static void apply(LinkedHashMap<String, ArrayList<String>> files)
+            throws IOException {
+        HashSet<File> directories = new HashSet<>();
+        for (Map.Entry<String, ArrayList<String>> file : files.entrySet()) {
+            File target = new File(file.getKey());
+            if (!target.getParentFile().isDirectory()) {
+                continue;
+            }
+            File temp = new File(target.getPath() + "."
+                    + ProcessHandle.current().pid() + TEMP_SUFFIX);
+            FileOutputStream stream = new FileOutputStream(temp);
+            Trace.fileOpened();
+            try (Writer out = new OutputStreamWriter(stream,
+                    Charset.defaultCharset())) {
+                for (String line : file.getValue()) {
+                    out.write(line);
+                    out.write(System.lineSeparator());
+                }
+                out.flush();
+                stream.getFD().sync();
+            }
+            Files.move(temp.toPath(), target.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            directories.add(target.getParentFile());
+        }
+        for (File directory : directories) {
+            syncDirectory(directory);
+        }
+    }
+
+    /** Sync a directory, so renames inside it survive a crash.
+     * @param directory -- directory. */
+    static void syncDirectory(File directory) {
+        try (FileChannel channel = FileChannel.open(directory.toPath(),
+                StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            return;
+        }
+    }
+
+    /** Key of a file in the pending writes.
+     * @param file -- file path
+     * @return -- absolute, normalized path. */
+    private static String keyOf(String file) {
+        return new File(file).getAbsoluteFile().toPath().normalize()
+                .toString();
+    }
+
+    /** The journal file. */
+    private File _myFile;
+    /** Pending content by absolute path, in order of first write. */
+    private LinkedHashMap<String, ArrayList<String>> _pending =
+            new LinkedHashMap<>();
+
+    /** Mark ending a complete journal. */
+    private static final int END_MARK = 0x474a4e4c;
+    /** Name of the directory whose files are journaled. */
+    private static final String GITLET_FOLDER = ".gitlet";
+    /** Suffix of temporary copies. */
+    private static final String TEMP_SUFFIX = ".tmp";
+
+}
@@ -0,0 +1,75 @@
+package gitlet;
+
+import java.io.File;
+import java.util.ArrayList;
+
+import static gitlet.GitletOperator.*;
+
+/** Transport to a remote living in a directory of this machine.
+ *  @author Shixuan (Wayne) Li
+ */
+class LocalTransport implements Transport {
+
+    /** Transport to the repository in DIRECTORY.
+     * @param directory -- working directory of the remote. */
+    LocalTransport(String directory) {
+        _myDirectory = directory;
+        _pack = new Pack(directory);
+    }
+
+    @Override
+    public boolean hasCommit(String hash) {
+        return _pack.mayHold(hash) && (_pack.contains(hash)
+                || new File(_myDirectory + PATH_COMMITS + hash).isDirectory());
+    }
+
+    @Override
+    public boolean hasBlob(String hash) {
+        return _pack.mayHold(hash) && (_pack.contains(hash)
+                || new File(_myDirectory + PATH_BLOBS + hash).isDirectory());
+    }
+
+    @Override
+    public Commit restoreCommit(String hash) {
+        return new Commit().restoreRemoteCommit(_myDirectory, _pack, hash);
+    }
+
+    @Override
+    public void download(ArrayList<String> blobs, ArrayList<Commit> commits) {
+        copy(_myDirectory, myPack(), blobs, commits);
+    }
+
+    @Override
+    public void upload(ArrayList<String> blobs, ArrayList<Commit> commits) {
+        copy("", _pack, blobs, commits);
+        MessageIndex messages = new MessageIndex(_myDirectory);
+        if (messages.exists()) {
+            messages.add(commits);
+        }
+    }
+
+    /** Copy blobs, commits and their trees into a pack as one batch.
+     * @param home -- working directory the blobs come from, "" for local
+     * @param target -- pack to copy into
+     * @param blobs -- blob hashes
+     * @param commits -- commits. */
+    private static void copy(String home, Pack target,
+                             ArrayList<String> blobs,
+                             ArrayList<Commit> commits) {
+        target.batch();
+        for (String blob : blobs) {
+            Blob.copyBlob(home, target, blob);
+        }
+        for (Commit commit : commits) {
+            commit.storeTree(target);
+            target.write(Pack.COMMIT, commit.myHash(), commit.encode());
+        }
+        target.flush();
+    }
+
+    /** Directory of the remote. */
+    private String _myDirectory;
+    /** Pack of the remote. */
+    private Pack _pack;
+
+}
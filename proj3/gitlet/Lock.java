@@ -0,0 +1,72 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+
+import static gitlet.GitletOperator.*;
+
+/** Locks on repositories, held from the start of a command until its
+ *  writes have landed. A lock is the lock of the operating system on the
+ *  file .gitlet/lock, taken through FileChannel.lock, so it is dropped
+ *  however the process ends. Commands that only read share it and run
+ *  side by side; every other command holds it alone, so writers run one
+ *  at a time and never beside a reader. Fetch and push also lock the
+ *  remote repository: shared to read from it, alone to write into it.
+ *  @author Shixuan (Wayne) Li
+ */
+class Lock {
+
+    /** Lock the repository whose lock file is FILE, waiting for whoever
+     *  holds it. Does nothing if the repository does not exist or this
+     *  process holds its lock already.
+     * @param file -- path of the lock file
+     * @param shared -- if the command only reads the repository. */
+    static void acquire(String file, boolean shared) {
+        File lock = new File(file);
+        if (!lock.getParentFile().isDirectory()) {
+            return;
+        }
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(lock.toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            channel.lock(0, Long.MAX_VALUE, shared);
+            HELD.add(channel);
+        } catch (OverlappingFileLockException e) {
+            close(channel);
+        } catch (IOException e) {
+            close(channel);
+            doSystemExit("Could not lock the repository.");
+        }
+    }
+
+    /** Release every lock this process holds. */
+    static void releaseAll() {
+        for (FileChannel channel : HELD) {
+            close(channel);
+        }
+        HELD.clear();
+    }
+
+    /** Close a channel, releasing its lock.
+     * @param channel -- channel, maybe null. */
+    private static void close(FileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** Channels of the lock files held, one per repository. */
+    private static final ArrayList<FileChannel> HELD = new ArrayList<>();
+
+}
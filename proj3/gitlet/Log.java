@@ -0,0 +1,224 @@
+package gitlet;
+
+import java.io.Writer;
+import java.io.IOException;
+import java.io.BufferedWriter;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+import static gitlet.GitletOperator.*;
+
+/** Printer of "log" and "global-log". Commits are read one at a time as
+ *  the walk reaches them and written through one buffered writer, and the
+ *  walk stops as soon as the options rule out any further commit.
+ *  Options: "-n [count]" prints at most count commits, "--since
+ *  [yyyy-MM-dd]" only commits made from that day on, and "--oneline" one
+ *  line per commit: abbreviated hash and message.
+ *  @author Shixuan (Wayne) Li
+ */
+class Log {
+
+    /** A printer for the options given to a log command.
+     * @param operands -- options, separated by whitespace. */
+    Log(String operands) {
+        String[] options = operands.trim().split("\\s+");
+        for (int i = 0; i < options.length; i += 1) {
+            switch (options[i]) {
+            case "":
+                break;
+            case ONELINE_OPTION:
+                _oneline = true;
+                break;
+            case COUNT_OPTION:
+                i += 1;
+                _limit = parseCount(i < options.length ? options[i] : "");
+                break;
+            case SINCE_OPTION:
+                i += 1;
+                _since = parseDay(i < options.length ? options[i] : "");
+                break;
+            default:
+                doSystemExit("Incorrect operands.");
+            }
+        }
+    }
+
+    /* **********************************
+     *              Methods             *
+     ********************************** */
+
+    /** Print the first-parent history of a commit, newest first. A first
+     *  parent is never younger than its child, so the walk ends at the
+     *  first commit older than --since.
+     * @param head -- hash of the commit to start from. */
+    void printHistory(String head) {
+        CommitGraph graph = myGraph();
+        try (Writer out = writer()) {
+            int index = graph.indexOf(head);
+            while (index >= 0 && _printed < _limit) {
+                Commit commit = graph.commit(index);
+                if (!isRecent(commit)) {
+                    break;
+                }
+                print(out, commit);
+                index = graph.firstParent(index);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** Print every commit of the repository: packed ones in hash order,
+     *  then loose ones. Hashes are listed lazily, and each commit is read
+     *  only when reached and dropped once printed. */
+    void printAll() {
+        try (Stream<String> hashes = Stream.concat(
+                myPack().hashStream(Pack.COMMIT), looseCommits());
+             Writer out = writer()) {
+            Iterator<String> iterator = hashes.iterator();
+            while (iterator.hasNext() && _printed < _limit) {
+                Commit commit = new Commit().restoreCommit(iterator.next());
+                if (isRecent(commit)) {
+                    print(out, commit);
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /* **********************************
+     *             Printing             *
+     ********************************** */
+
+    /** Write one commit.
+     * @param out -- output
+     * @param commit -- the commit
+     * @throws IOException -- if OUT fails. */
+    private void print(Writer out, Commit commit) throws IOException {
+        _printed += 1;
+        if (_oneline) {
+            out.write(commit.myHash().substring(0, SHORT_HASH_LENGTH));
+            out.write(" " + commit.myMessage() + LINE);
+            return;
+        }
+        out.write("===" + LINE);
+        out.write("commit " + commit.myHash() + LINE);
+        if (commit.isMerged()) {
+            out.write("Merge:");
+            for (String parent : commit.myParents()) {
+                out.write(" " + parent.substring(0, SHORT_HASH_LENGTH));
+            }
+            out.write(LINE);
+        }
+        out.write("Date: " + commit.myDate() + LINE);
+        out.write(commit.myMessage() + LINE);
+        out.write(LINE);
+    }
+
+    /** Buffered writer on standard output. Closing it only flushes, so
+     *  System.out stays open for the rest of the command.
+     * @return -- the writer. */
+    private static Writer writer() {
+        return new BufferedWriter(new OutputStreamWriter(System.out) {
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        }, BUFFER_SIZE);
+    }
+
+    /* **********************************
+     *             Filtering            *
+     ********************************** */
+
+    /** Check if a commit passes --since.
+     * @param commit -- the commit
+     * @return -- check result. */
+    private boolean isRecent(Commit commit) {
+        if (_since == null) {
+            return true;
+        }
+        try {
+            return !DATE_FORMAT.parse(commit.myDate()).before(_since);
+        } catch (ParseException e) {
+            return true;
+        }
+    }
+
+    /** Hashes of the commits still kept one directory per commit.
+     * @return -- lazily listed hashes, to be closed. */
+    private static Stream<String> looseCommits() {
+        Path folder = Paths.get(PATH_COMMITS);
+        if (!Files.isDirectory(folder)) {
+            return Stream.empty();
+        }
+        try {
+            return Files.list(folder).filter(Files::isDirectory)
+                    .map(path -> path.getFileName().toString());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** Parse the operand of -n.
+     * @param operand -- operand
+     * @return -- the count. */
+    private static int parseCount(String operand) {
+        int result = -1;
+        try {
+            result = Integer.parseInt(operand);
+        } catch (NumberFormatException e) {
+            result = -1;
+        }
+        if (result < 0) {
+            doSystemExit("Incorrect operands.");
+        }
+        return result;
+    }
+
+    /** Parse the operand of --since.
+     * @param operand -- operand
+     * @return -- start of that day. */
+    private static Date parseDay(String operand) {
+        SimpleDateFormat format = new SimpleDateFormat(DAY_FORMAT);
+        format.setLenient(false);
+        try {
+            return format.parse(operand);
+        } catch (ParseException e) {
+            doSystemExit("Incorrect operands.");
+            return null;
+        }
+    }
+
+    /** If one line is printed per commit. */
+    private boolean _oneline = false;
+    /** Most commits to print. */
+    private int _limit = Integer.MAX_VALUE;
+    /** Oldest date to print, null for no bound. */
+    private Date _since = null;
+    /** Commits printed so far. */
+    private int _printed = 0;
+
+    /** Options. */
+    private static final String ONELINE_OPTION = "--oneline",
+            COUNT_OPTION = "-n",
+            SINCE_OPTION = "--since";
+    /** Format of the operand of --since. */
+    private static final String DAY_FORMAT = "yyyy-MM-dd";
+    /** Length of abbreviated hashes. */
+    private static final int SHORT_HASH_LENGTH = 7;
+    /** Size of the output buffer. */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /** Line ending. */
+    private static final String LINE = System.lineSeparator();
+
+}
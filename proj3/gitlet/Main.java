@@ -1,5 +1,7 @@
 package gitlet;
 
+import java.io.File;
+
 import static gitlet.Command.Type.*;
 import static gitlet.GitletOperator.*;
 
@@ -9,9 +11,27 @@ import static gitlet.GitletOperator.*;
 public class Main {
 
     /** Usage: java gitlet.Main ARGS, where ARGS contains
-     *  <COMMAND> <OPERAND> .... */
+     *  [--trace] <COMMAND> <OPERAND> .... Commands go to the daemon of the
+     *  repository if one runs; "daemon" starts one, "daemon stop" stops
+     *  it. */
     public static void main(String... args) {
+        if (args.length == 1 && args[0].equals(Daemon.DAEMON_COMMAND)) {
+            Daemon.serve();
+            return;
+        }
+        if (Daemon.forward(args)) {
+            return;
+        }
+        if (Daemon.isStop(args)) {
+            doSystemExit("No daemon is running.");
+        }
+        run(args);
+    }
 
+    /** Run a command in this process.
+     * @param args -- [--trace] <COMMAND> <OPERAND> .... */
+    static void run(String... args) {
+        args = Trace.start(args);
         if (args.length <= 0) {
             doSystemExit("Please enter a command.");
         }
@@ -21,6 +41,21 @@ public class Main {
             doSystemExit("No command with that name exists.");
         }
 
+        Lock.acquire(PATH_LOCK, isReadOnly(command)
+                && !new File(PATH_JOURNAL).exists());
+        try {
+            dispatch(command, args);
+            myJournal().commit();
+        } finally {
+            Lock.releaseAll();
+        }
+        Trace.finish();
+    }
+
+    /** Run a valid command under the repository lock.
+     * @param command -- command
+     * @param args -- command line, COMMAND first. */
+    private static void dispatch(String command, String[] args) {
         if (command.equals("commit")) {
             if (args.length == 1 || args[1].length() <= 0) {
                 doSystemExit("Please enter a commit message.");
@@ -33,6 +68,8 @@ public class Main {
             String[] operands;
             if (args.length == 1) {
                 operands = new String[] {""};
+            } else if (args.length > 2 && args[1].startsWith("--")) {
+                operands = new String[] {args[2], args[1]};
             } else {
                 operands = new String[] {args[1]};
             }
@@ -59,6 +96,30 @@ public class Main {
         return false;
     }
 
+    /** Check if a command only reads the repository, so it may share the
+     *  repository lock. A journal left behind by a crash is replayed by
+     *  whichever command comes next, so that one takes the lock alone.
+     * @param command -- command
+     * @return -- check result. */
+    static boolean isReadOnly(String command) {
+        for (String cmnd : READ_ONLY_COMMANDS) {
+            if (cmnd.equals(command)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Commands that only read the repository. Status and diff may
+     *  rewrite the stat cache, which is a cache only. */
+    private static final String[] READ_ONLY_COMMANDS = new String[] {
+        "log",
+        "global-log",
+        "find",
+        "status",
+        "diff",
+    };
+
     /** Collection of all correct commands. */
     private static final String[] VALID_COMMANDS = new String[] {
         "init",
@@ -69,6 +130,7 @@ public class Main {
         "global-log",
         "find",
         "status",
+        "diff",
         "branch",
         "rm-branch",
         "checkout",
@@ -79,6 +141,9 @@ public class Main {
         "rm-remote",
         "push",
         "pull",
+        "migrate",
+        "gc",
+        "chunking",
         "--help",
         "clean",
     };
@@ -0,0 +1,503 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.FileOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static gitlet.GitletOperator.*;
+
+/** Inverted index over commit messages in .gitlet/Pack/messages.idx. The
+ *  words of every message, lower-cased, map to the sorted hashes of the
+ *  commits using them. The file holds a sorted table of words, then
+ *  their names, then their hash lists; it is memory-mapped, and a word is
+ *  found by binary search over the table. The empty word lists every
+ *  indexed commit. Commits indexed since the file was written are
+ *  appended to messages.tail, each as its hash and words, and read
+ *  beside the file; the tail is merged into the file once it holds more
+ *  than a part of it, and whenever the index is rebuilt. The index
+ *  covers the same commits as the commit graph. Words are indexed by
+ *  their first MAX_WORD_LENGTH characters, so that any word fits the
+ *  lengths of the file and the tail.
+ *  @author Shixuan (Wayne) Li
+ */
+class MessageIndex {
+
+    /** Message index of the local repository. */
+    MessageIndex() {
+        this("");
+    }
+
+    /** Message index of the repository living in directory HOME.
+     * @param home -- working directory of the repository, "" for local. */
+    MessageIndex(String home) {
+        _myFile = new File(home + PATH_PACK + INDEX_FILE);
+        _tailFile = new File(home + PATH_PACK + TAIL_FILE);
+    }
+
+    /* **********************************
+     *              Queries             *
+     ********************************** */
+
+    /** Check if the index file exists.
+     * @return -- check result. */
+    boolean exists() {
+        return _myFile.exists();
+    }
+
+    /** Get the commits whose message uses every word of TEXT, so
+     *  possibly equal to it.
+     * @param text -- message
+     * @return -- sorted hashes; all commits if TEXT has no word. */
+    ArrayList<String> candidates(String text) {
+        ArrayList<String> words = indexedWordsOf(text);
+        if (words.isEmpty()) {
+            return hashesOf("");
+        }
+        ArrayList<String> result = null;
+        for (String word : words) {
+            ArrayList<String> hashes = hashesOf(word);
+            if (result == null) {
+                result = hashes;
+            } else {
+                result.retainAll(new TreeSet<>(hashes));
+            }
+            if (result.isEmpty()) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    /** Get the commits whose message may contain FRAGMENT: those using a
+     *  word containing the longest word of FRAGMENT, and those using a
+     *  word cut to MAX_WORD_LENGTH, which may contain it past the cut.
+     * @param fragment -- part of a message
+     * @return -- sorted hashes; all commits if FRAGMENT has no word. */
+    ArrayList<String> containing(String fragment) {
+        String longest = "";
+        for (String word : wordsOf(fragment)) {
+            if (word.length() > longest.length()) {
+                longest = word;
+            }
+        }
+        if (longest.isEmpty()) {
+            return hashesOf("");
+        }
+        longest = indexed(longest);
+        TreeSet<String> result = new TreeSet<>();
+        ByteBuffer file = file();
+        int count = file.getInt(MAGIC.length);
+        for (int i = 0; i < count; i += 1) {
+            String word = wordAt(file, i);
+            if (word.contains(longest) || mayBeCut(word)) {
+                result.addAll(hashesAt(file, i));
+            }
+        }
+        for (Map.Entry<String, TreeSet<String>> word : tail().entrySet()) {
+            if (word.getKey().contains(longest)
+                    || mayBeCut(word.getKey())) {
+                result.addAll(word.getValue());
+            }
+        }
+        return new ArrayList<>(result);
+    }
+
+    /* **********************************
+     *              Updates             *
+     ********************************** */
+
+    /** Add commits to the index by appending them to the tail, merging
+     *  the tail into the file once it has grown past a part of it. The
+     *  file is written at once if missing.
+     * @param commits -- new commits. */
+    void add(Collection<Commit> commits) {
+        if (!exists()) {
+            TreeMap<String, TreeSet<String>> words = new TreeMap<>();
+            addTo(words, commits);
+            write(words);
+            return;
+        }
+        if (commits.isEmpty()) {
+            return;
+        }
+        appendTail(commits);
+        if (_tailCommits > Math.max(TAIL_MIN,
+                filed("").size() / TAIL_PART)) {
+            TreeMap<String, TreeSet<String>> words = load();
+            for (Map.Entry<String, TreeSet<String>> word
+                    : tail().entrySet()) {
+                words.computeIfAbsent(word.getKey(), k -> new TreeSet<>())
+                        .addAll(word.getValue());
+            }
+            write(words);
+        }
+    }
+
+    /** Index exactly the given commits, dropping what was indexed.
+     * @param commits -- every commit of the repository. */
+    void rebuild(Collection<Commit> commits) {
+        _myFile.delete();
+        _file = null;
+        add(commits);
+    }
+
+    /** Add the words of commits to a table.
+     * @param words -- sorted hashes by word
+     * @param commits -- commits to add. */
+    private static void addTo(TreeMap<String, TreeSet<String>> words,
+                              Collection<Commit> commits) {
+        for (Commit commit : commits) {
+            words.computeIfAbsent("", k -> new TreeSet<>())
+                    .add(commit.myHash());
+            for (String word : indexedWordsOf(commit.myMessage())) {
+                words.computeIfAbsent(word, k -> new TreeSet<>())
+                        .add(commit.myHash());
+            }
+        }
+    }
+
+    /* **********************************
+     *           File-Handling          *
+     ********************************** */
+
+    /** Read the whole index.
+     * @return -- sorted hashes by word. */
+    private TreeMap<String, TreeSet<String>> load() {
+        TreeMap<String, TreeSet<String>> result = new TreeMap<>();
+        ByteBuffer file = file();
+        int count = file.getInt(MAGIC.length);
+        for (int i = 0; i < count; i += 1) {
+            result.put(wordAt(file, i), new TreeSet<>(hashesAt(file, i)));
+        }
+        return result;
+    }
+
+    /** Write the index: header, table of (name offset, hashes offset,
+     *  hash count) entries, names, then raw hashes. The tail, merged
+     *  into WORDS if there was one, is deleted.
+     * @param words -- sorted hashes by word. */
+    private void write(TreeMap<String, TreeSet<String>> words) {
+        ArrayList<byte[]> names = new ArrayList<>();
+        for (String word : words.keySet()) {
+            names.add(word.getBytes(StandardCharsets.UTF_8));
+        }
+        int nameOffset = HEADER_LENGTH + words.size() * ENTRY_LENGTH;
+        int hashOffset = nameOffset;
+        for (byte[] name : names) {
+            hashOffset += Short.BYTES + name.length;
+        }
+        File temp = new File(_myFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.write(MAGIC);
+            out.writeInt(words.size());
+            int i = 0;
+            for (TreeSet<String> hashes : words.values()) {
+                out.writeInt(nameOffset);
+                out.writeInt(hashOffset);
+                out.writeInt(hashes.size());
+                nameOffset += Short.BYTES + names.get(i).length;
+                hashOffset += hashes.size() * Pack.HASH_LENGTH;
+                i += 1;
+            }
+            for (byte[] name : names) {
+                out.writeShort(name.length);
+                out.write(name);
+            }
+            for (TreeSet<String> hashes : words.values()) {
+                for (String hash : hashes) {
+                    out.write(Pack.toRaw(hash));
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        try {
+            Files.move(temp.toPath(), _myFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        _tailFile.delete();
+        _file = null;
+        _tail = null;
+        _tailCommits = 0;
+    }
+
+    /** Append commits to the tail, each as its length, then its raw hash,
+     *  word count and words. A record a crash left short is cut off
+     *  first.
+     * @param commits -- commits to append. */
+    private void appendTail(Collection<Commit> commits) {
+        TreeMap<String, TreeSet<String>> tail = tail();
+        ByteArrayOutputStream records = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(records)) {
+            for (Commit commit : commits) {
+                ArrayList<String> words =
+                        indexedWordsOf(commit.myMessage());
+                ByteArrayOutputStream record = new ByteArrayOutputStream();
+                DataOutputStream fields = new DataOutputStream(record);
+                fields.write(Pack.toRaw(commit.myHash()));
+                fields.writeShort(words.size());
+                for (String word : words) {
+                    fields.writeUTF(word);
+                }
+                out.writeInt(record.size());
+                record.writeTo(out);
+                TreeMap<String, TreeSet<String>> added = new TreeMap<>();
+                addTo(added, List.of(commit));
+                added.forEach((word, hashes) -> tail.computeIfAbsent(word,
+                        k -> new TreeSet<>()).addAll(hashes));
+                _tailCommits += 1;
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        try (FileChannel out = FileChannel.open(_tailFile.toPath(),
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+            out.truncate(_tailLength);
+            out.position(_tailLength);
+            ByteBuffer content = ByteBuffer.wrap(records.toByteArray());
+            while (content.hasRemaining()) {
+                out.write(content);
+            }
+            _tailLength = out.position();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** The commits of the tail by word, read on first use. Reading stops
+     *  at a record cut short.
+     * @return -- sorted hashes by word. */
+    private TreeMap<String, TreeSet<String>> tail() {
+        if (_tail != null) {
+            return _tail;
+        }
+        _tail = new TreeMap<>();
+        _tailCommits = 0;
+        _tailLength = 0;
+        if (!_tailFile.exists()) {
+            return _tail;
+        }
+        ByteBuffer records;
+        try {
+            records = ByteBuffer.wrap(Files.readAllBytes(_tailFile.toPath()));
+        } catch (IOException e) {
+            throw new GitletException("Cannot read message index tail");
+        }
+        byte[] raw = new byte[Pack.HASH_LENGTH];
+        while (records.remaining() >= Integer.BYTES) {
+            int length = records.getInt();
+            if (length < raw.length || length > records.remaining()) {
+                break;
+            }
+            ByteBuffer record = records.slice(records.position(), length);
+            records.position(records.position() + length);
+            record.get(raw);
+            String hash = Pack.toHex(raw);
+            _tail.computeIfAbsent("", k -> new TreeSet<>()).add(hash);
+            try (DataInputStream in = new DataInputStream(
+                    new ByteArrayInputStream(record.array(),
+                            record.arrayOffset() + record.position(),
+                            record.remaining()))) {
+                for (int i = in.readUnsignedShort(); i > 0; i -= 1) {
+                    _tail.computeIfAbsent(in.readUTF(),
+                            k -> new TreeSet<>()).add(hash);
+                }
+            } catch (IOException e) {
+                throw new GitletException("Cannot read message index tail");
+            }
+            _tailCommits += 1;
+            _tailLength = records.position();
+        }
+        return _tail;
+    }
+
+    /** Get the hashes listed under a word.
+     * @param word -- lower-cased word, "" for every commit
+     * @return -- sorted hashes. */
+    private ArrayList<String> hashesOf(String word) {
+        ArrayList<String> result = filed(word);
+        TreeSet<String> tailed = tail().get(word);
+        if (tailed == null) {
+            return result;
+        }
+        tailed = new TreeSet<>(tailed);
+        tailed.addAll(result);
+        return new ArrayList<>(tailed);
+    }
+
+    /** Get the hashes listed under a word in the file.
+     * @param word -- lower-cased word, "" for every commit
+     * @return -- sorted hashes. */
+    private ArrayList<String> filed(String word) {
+        ByteBuffer file = file();
+        int low = 0, high = file.getInt(MAGIC.length);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int cmp = wordAt(file, mid).compareTo(word);
+            if (cmp == 0) {
+                return hashesAt(file, mid);
+            } else if (cmp < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return new ArrayList<>();
+    }
+
+    /** Get the word of an entry.
+     * @param file -- index buffer
+     * @param entry -- entry number
+     * @return -- the word. */
+    private static String wordAt(ByteBuffer file, int entry) {
+        int position = file.getInt(HEADER_LENGTH + entry * ENTRY_LENGTH);
+        byte[] name =
+                new byte[Short.toUnsignedInt(file.getShort(position))];
+        ByteBuffer view = file.duplicate();
+        view.position(position + Short.BYTES);
+        view.get(name);
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    /** Get the hashes of an entry.
+     * @param file -- index buffer
+     * @param entry -- entry number
+     * @return -- sorted hashes. */
+    private static ArrayList<String> hashesAt(ByteBuffer file, int entry) {
+        int position = HEADER_LENGTH + entry * ENTRY_LENGTH + Integer.BYTES;
+        int offset = file.getInt(position);
+        int count = file.getInt(position + Integer.BYTES);
+        ArrayList<String> result = new ArrayList<>(count);
+        byte[] raw = new byte[Pack.HASH_LENGTH];
+        ByteBuffer view = file.duplicate();
+        view.position(offset);
+        for (int i = 0; i < count; i += 1) {
+            view.get(raw);
+            result.add(Pack.toHex(raw));
+        }
+        return result;
+    }
+
+    /** The memory-mapped index, mapped on first use, or an empty one if
+     *  the file is missing.
+     * @return -- index buffer. */
+    private ByteBuffer file() {
+        if (_file == null) {
+            if (!_myFile.exists()) {
+                _file = ByteBuffer.allocate(HEADER_LENGTH);
+                _file.put(MAGIC).putInt(0);
+            } else {
+                try (FileChannel channel = FileChannel.open(
+                        _myFile.toPath(), StandardOpenOption.READ)) {
+                    _file = channel.map(FileChannel.MapMode.READ_ONLY,
+                            0, channel.size());
+                } catch (IOException e) {
+                    throw new GitletException("Cannot read message index");
+                }
+            }
+        }
+        return _file;
+    }
+
+    /** Split a message into distinct lower-cased words: runs of letters
+     *  and digits.
+     * @param message -- message
+     * @return -- the words, in order of first use. */
+    static ArrayList<String> wordsOf(String message) {
+        ArrayList<String> result = new ArrayList<>();
+        for (String word : message.toLowerCase().split("[^\\p{L}\\p{N}]+")) {
+            if (!word.isEmpty() && !result.contains(word)) {
+                result.add(word);
+            }
+        }
+        return result;
+    }
+
+    /** Split a message into the distinct words the index holds: its
+     *  words, each cut to MAX_WORD_LENGTH characters.
+     * @param message -- message
+     * @return -- the words, in order of first use. */
+    private static ArrayList<String> indexedWordsOf(String message) {
+        ArrayList<String> result = new ArrayList<>();
+        for (String word : wordsOf(message)) {
+            word = indexed(word);
+            if (!result.contains(word)) {
+                result.add(word);
+            }
+        }
+        return result;
+    }
+
+    /** Cut a word to what the index holds of it.
+     * @param word -- lower-cased word
+     * @return -- its first MAX_WORD_LENGTH characters. */
+    private static String indexed(String word) {
+        if (word.codePointCount(0, word.length()) <= MAX_WORD_LENGTH) {
+            return word;
+        }
+        return word.substring(0, word.offsetByCodePoints(0, MAX_WORD_LENGTH));
+    }
+
+    /** Check if a word of the index may have been cut.
+     * @param word -- word of the index
+     * @return -- check result. */
+    private static boolean mayBeCut(String word) {
+        return word.length() >= MAX_WORD_LENGTH
+                && word.codePointCount(0, word.length()) == MAX_WORD_LENGTH;
+    }
+
+    /** The index file. */
+    private File _myFile;
+    /** The tail file. */
+    private File _tailFile;
+    /** Mapped index file, null until used. */
+    private ByteBuffer _file;
+    /** Commits of the tail by word, null until read. */
+    private TreeMap<String, TreeSet<String>> _tail;
+    /** Number of commits in the tail. */
+    private int _tailCommits;
+    /** Bytes of the tail up to its last whole record. */
+    private long _tailLength;
+
+    /** Magic bytes starting the index. */
+    private static final byte[] MAGIC = {'G', 'M', 'S', 'G'};
+    /** Length of the header: magic and word count. */
+    private static final int HEADER_LENGTH = MAGIC.length + Integer.BYTES;
+    /** Length of a table entry: name offset, hashes offset, hash count. */
+    private static final int ENTRY_LENGTH = 3 * Integer.BYTES;
+    /** Longest word indexed, in characters. Four bytes of UTF-8 each at
+     *  most, so a word always fits the short length before it. */
+    private static final int MAX_WORD_LENGTH = 256;
+    /** Commits the tail may hold whatever the size of the file. */
+    private static final int TAIL_MIN = 256;
+    /** The tail may hold up to this part of the commits of the file. */
+    private static final int TAIL_PART = 8;
+    /** Convenience for the index file names. */
+    static final String INDEX_FILE = "messages.idx",
+            TAIL_FILE = "messages.tail";
+
+}
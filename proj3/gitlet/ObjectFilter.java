@@ -0,0 +1,195 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/** Bloom filter of the objects of a repository, kept beside the pack in
+ *  objects.bloom. Asking it about an object the repository lacks almost
+ *  always says so at once, without searching the index of the pack or
+ *  looking for a loose copy; it never says so of an object it holds.
+ *  Hashes are SHA-1, so their bytes already are random and two words
+ *  of each pick the bits, by double hashing. The file records how many
+ *  entries of the pack index the filter covers, so a filter the pack
+ *  has outgrown is known to be stale.
+ *  @author Shixuan (Wayne) Li
+ */
+class ObjectFilter {
+
+    /** An empty filter with room for CAPACITY objects: at least ten bits
+     *  an object, seven of them set, for about one false positive in a
+     *  hundred once it is full and fewer before.
+     * @param capacity -- number of objects. */
+    ObjectFilter(int capacity) {
+        long bits = Long.highestOneBit(Math.max(MIN_BITS,
+                (long) capacity * BITS_PER_OBJECT - 1)) << 1;
+        _buffer = ByteBuffer.allocate(HEADER_LENGTH + (int) (bits / 8));
+        _buffer.put(MAGIC);
+        _mask = bits - 1;
+    }
+
+    /** A filter read from BUFFER.
+     * @param buffer -- header and bits. */
+    private ObjectFilter(ByteBuffer buffer) {
+        _buffer = buffer;
+        _mask = (long) (buffer.limit() - HEADER_LENGTH) * 8 - 1;
+    }
+
+    /** Read a filter from a file.
+     * @param file -- the file
+     * @return -- the filter, or null if the file is missing or not a
+     *            filter. */
+    static ObjectFilter read(File file) {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY,
+                    0, channel.size());
+            int bytes = buffer.limit() - HEADER_LENGTH;
+            if (bytes < Long.BYTES || Integer.bitCount(bytes) != 1) {
+                return null;
+            }
+            byte[] magic = new byte[MAGIC.length];
+            buffer.get(0, magic);
+            if (!Arrays.equals(magic, MAGIC)) {
+                return null;
+            }
+            return new ObjectFilter(buffer);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /** Write the filter to a temporary file named after this process and
+     *  rename it over FILE, so readers never see half of it.
+     * @param file -- the file. */
+    void write(File file) {
+        File temp = new File(file.getPath() + "."
+                + ProcessHandle.current().pid() + ".tmp");
+        try (FileChannel out = FileChannel.open(temp.toPath(),
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer content = _buffer.duplicate();
+            content.clear();
+            while (content.hasRemaining()) {
+                out.write(content);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** Add an object.
+     * @param raw -- raw hash of the object. */
+    void add(byte[] raw) {
+        writable();
+        ByteBuffer hash = ByteBuffer.wrap(raw);
+        for (int i = 0; i < HASHES; i += 1) {
+            long bit = bitOf(hash, i);
+            int position = positionOf(bit);
+            _buffer.putLong(position,
+                    _buffer.getLong(position) | (1L << bit));
+        }
+        _buffer.putInt(COUNT_POSITION, count() + 1);
+    }
+
+    /** Check if an object may have been added.
+     * @param raw -- raw hash of the object
+     * @return -- false only if it was not. */
+    boolean mayContain(byte[] raw) {
+        ByteBuffer hash = ByteBuffer.wrap(raw);
+        for (int i = 0; i < HASHES; i += 1) {
+            long bit = bitOf(hash, i);
+            if ((_buffer.getLong(positionOf(bit)) & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Get how many entries of the pack index the filter covers.
+     * @return -- number of entries. */
+    int indexed() {
+        return _buffer.getInt(MAGIC.length);
+    }
+
+    /** Record how many entries of the pack index the filter covers.
+     * @param entries -- number of entries. */
+    void indexed(int entries) {
+        writable();
+        _buffer.putInt(MAGIC.length, entries);
+    }
+
+    /** Check if the filter holds more objects than it has room for, past
+     *  which false positives grow quickly.
+     * @return -- check result. */
+    boolean isFull() {
+        return count() > (_mask + 1) / BITS_PER_OBJECT;
+    }
+
+    /** Get the Ith bit of an object: the first word of its hash plus I
+     *  times the second, made odd so that the bits differ.
+     * @param hash -- raw hash of the object
+     * @param i -- which bit, from 0 to HASHES
+     * @return -- bit number. */
+    private long bitOf(ByteBuffer hash, int i) {
+        return (hash.getLong(0) + i * (hash.getLong(Long.BYTES) | 1)) & _mask;
+    }
+
+    /** Get where the word holding a bit sits in the buffer.
+     * @param bit -- bit number
+     * @return -- byte position. */
+    private static int positionOf(long bit) {
+        return HEADER_LENGTH + (int) (bit / Long.SIZE) * Long.BYTES;
+    }
+
+    /** Copy the filter onto the heap if it is still the mapped file. */
+    private void writable() {
+        if (_buffer.isReadOnly()) {
+            ByteBuffer copy = ByteBuffer.allocate(_buffer.limit());
+            copy.put(_buffer.duplicate().clear());
+            _buffer = copy;
+        }
+    }
+
+    /** Get how many objects were added.
+     * @return -- number of objects. */
+    private int count() {
+        return _buffer.getInt(COUNT_POSITION);
+    }
+
+    /** Header and bits. */
+    private ByteBuffer _buffer;
+    /** Number of bits less one, a power of two less one. */
+    private final long _mask;
+
+    /** Magic bytes starting the file. */
+    private static final byte[] MAGIC = {'G', 'B', 'L', 'M'};
+    /** Position of the number of objects added. */
+    private static final int COUNT_POSITION = MAGIC.length + Integer.BYTES;
+    /** Length of the header: magic, entries covered and objects added. */
+    private static final int HEADER_LENGTH =
+            COUNT_POSITION + Integer.BYTES;
+    /** Bits per object at full capacity. */
+    private static final int BITS_PER_OBJECT = 10;
+    /** Bits set per object. */
+    private static final int HASHES = 7;
+    /** Fewest bits in a filter. */
+    private static final long MIN_BITS = 1 << 10;
+
+}
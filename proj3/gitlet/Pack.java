@@ -0,0 +1,893 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.FileOutputStream;
+import java.io.DataOutputStream;
+import java.io.BufferedOutputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static gitlet.Utils.*;
+import static gitlet.GitletOperator.*;
+
+/** Packed object store in .gitlet/Pack. Every commit, tree and blob is
+ *  appended to one data file, and a sorted index of (hash, type, offset,
+ *  length) entries is memory-mapped and binary searched to find them
+ *  again. The data file is mapped a window of WINDOW_SIZE bytes at a
+ *  time, so it may outgrow what one buffer can address.
+ *  A second sorted index maps the SHA-1 of a file name to the blobs
+ *  stored under that name, and a Bloom filter of every object, loose ones
+ *  included, tells most missing objects apart without either.
+ *  @author Shixuan (Wayne) Li
+ */
+class Pack {
+
+    /** Pack of the local repository. */
+    Pack() {
+        this("");
+    }
+
+    /** Pack of the repository living in directory HOME.
+     * @param home -- working directory of the repository, "" for local. */
+    Pack(String home) {
+        _home = home;
+        _myPath = home + PATH_PACK;
+        _dataFile = new File(_myPath + DATA_FILE);
+        _indexFile = new File(_myPath + INDEX_FILE);
+        _namesFile = new File(_myPath + NAMES_FILE);
+        _filterFile = new File(_myPath + FILTER_FILE);
+    }
+
+    /** Init the pack in init mode. */
+    void init() {
+        new File(_myPath).mkdir();
+        writeIndex(_indexFile, new ArrayList<>());
+        writeIndex(_namesFile, new ArrayList<>());
+        try {
+            _dataFile.createNewFile();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        rebuildFilter();
+    }
+
+    /* **********************************
+     *              Methods             *
+     ********************************** */
+
+    /** Check if the pack holds an object.
+     * @param hash -- object hash
+     * @return -- check result. */
+    boolean contains(String hash) {
+        return search(hash) >= 0
+                || (_batch != null && _batch.containsKey(hash));
+    }
+
+    /** Check if the repository may hold an object, packed or loose. The
+     *  Bloom filter answers without searching the index or looking for a
+     *  loose copy, and says yes of a missing object about one time in a
+     *  hundred, so callers check with contains when it does.
+     * @param hash -- object hash
+     * @return -- false only if the repository lacks the object. */
+    boolean mayHold(String hash) {
+        return (_batch != null && _batch.containsKey(hash))
+                || filter().mayContain(toRaw(hash));
+    }
+
+    /** Get the type of an object.
+     * @param hash -- object hash
+     * @return -- COMMIT, BLOB, TREE or CHUNK, or -1 if not in the pack. */
+    int typeOf(String hash) {
+        ByteBuffer entry = entryOf(hash);
+        if (entry == null) {
+            return -1;
+        }
+        return entry.get(HASH_LENGTH);
+    }
+
+    /** Get a read-only view on the content of an object.
+     * @param hash -- object hash
+     * @return -- the content, or null if not in the pack. */
+    ByteBuffer find(String hash) {
+        ByteBuffer entry = entryOf(hash);
+        if (entry == null) {
+            return null;
+        }
+        return region(entry.getLong(HASH_LENGTH + 1),
+                entry.getInt(HASH_LENGTH + 1 + Long.BYTES));
+    }
+
+    /** Get where an object sits in the data file. Objects written later
+     *  sit further.
+     * @param hash -- object hash
+     * @return -- the offset, or -1 if not in the pack. */
+    long offsetOf(String hash) {
+        ByteBuffer entry = entryOf(hash);
+        if (entry == null) {
+            return -1;
+        }
+        return entry.getLong(HASH_LENGTH + 1);
+    }
+
+    /** Read the content of an object.
+     * @param hash -- object hash
+     * @return -- the content, or null if not in the pack. */
+    byte[] read(String hash) {
+        ByteBuffer content = find(hash);
+        if (content == null) {
+            return null;
+        }
+        byte[] result = new byte[content.remaining()];
+        content.get(result);
+        return result;
+    }
+
+    /** Append an object to the pack. Objects already packed are skipped.
+     * @param type -- COMMIT, BLOB, TREE or CHUNK
+     * @param hash -- object hash
+     * @param content -- object content. */
+    void write(byte type, String hash, byte[] content) {
+        if (contains(hash)) {
+            return;
+        }
+        new File(_myPath).mkdirs();
+        long offset = _dataFile.length() + RECORD_HEADER_LENGTH;
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(
+                        new FileOutputStream(_dataFile, true)))) {
+            out.write(toRaw(hash));
+            out.writeByte(type);
+            out.writeInt(content.length);
+            out.write(content);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        addEntry(entry(hash, type, offset, content.length));
+    }
+
+    /** Append a blob to the pack and record the name it is stored under.
+     * @param hash -- blob hash
+     * @param content -- packed blob
+     * @param name -- file name of the blob. */
+    void write(String hash, byte[] content, String name) {
+        write(BLOB, hash, content);
+        addName(hash, name);
+    }
+
+    /** Append a blob to the pack as CONTENT writes it, straight into the
+     *  data file, and record the name it is stored under. Its length is
+     *  filled in once written, so the blob is never held in memory.
+     * @param hash -- blob hash
+     * @param name -- file name of the blob
+     * @param content -- writes the packed blob. */
+    void write(String hash, String name, Streamed content) {
+        if (!contains(hash)) {
+            new File(_myPath).mkdirs();
+            try (FileChannel channel = FileChannel.open(_dataFile.toPath(),
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE)) {
+                long start = channel.size();
+                channel.position(start);
+                OutputStream out = new BufferedOutputStream(
+                        Channels.newOutputStream(channel), BUFFER_SIZE);
+                out.write(ByteBuffer.allocate(RECORD_HEADER_LENGTH)
+                        .put(toRaw(hash)).put(BLOB).array());
+                content.writeTo(out);
+                out.flush();
+                long length = channel.size() - start - RECORD_HEADER_LENGTH;
+                if (length > Integer.MAX_VALUE) {
+                    channel.truncate(start);
+                    throw new GitletException("Cannot pack " + name
+                            + ", which is too large.");
+                }
+                channel.write(ByteBuffer.allocate(Integer.BYTES)
+                        .putInt(0, (int) length),
+                        start + HASH_LENGTH + 1);
+                addEntry(entry(hash, BLOB, start + RECORD_HEADER_LENGTH,
+                        (int) length));
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+        }
+        addName(hash, name);
+    }
+
+    /** Writes a packed object into the data file. */
+    interface Streamed {
+        /** Write the packed object.
+         * @param out -- stream into the data file
+         * @throws IOException -- if writing fails. */
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /** Enter an object just appended to the data file into the index,
+     *  or into the batch.
+     * @param entry -- its raw index entry. */
+    private void addEntry(byte[] entry) {
+        _windows.clear();
+        String hash = toHex(Arrays.copyOf(entry, HASH_LENGTH));
+        if (_batch != null) {
+            _batch.put(hash, entry);
+            return;
+        }
+        ArrayList<byte[]> entries = readEntries(index(), ENTRY_LENGTH);
+        int before = entries.size();
+        entries.add(-search(hash) - 1, entry);
+        writeIndex(_indexFile, entries);
+        _index = null;
+        extendFilter(before, List.of(hash));
+    }
+
+    /** Record the name a blob is stored under, unless already recorded.
+     * @param hash -- blob hash
+     * @param name -- file name of the blob. */
+    private void addName(String hash, String name) {
+        if (blobsNamed(name).contains(hash)) {
+            return;
+        }
+        byte[] entry = ByteBuffer.allocate(NAME_ENTRY_LENGTH)
+                .put(toRaw(sha1(name))).put(toRaw(hash)).array();
+        if (_batch != null) {
+            _batchNames.add(entry);
+            return;
+        }
+        ArrayList<byte[]> entries = readEntries(names(), NAME_ENTRY_LENGTH);
+        int position = lowerBound(names(), NAME_ENTRY_LENGTH, entry,
+                NAME_ENTRY_LENGTH);
+        entries.add(position, entry);
+        writeIndex(_namesFile, entries);
+        _names = null;
+    }
+
+    /** Start a batch: objects written from now on are appended to the
+     *  data file at once, but only enter the indices on flush, so a batch
+     *  costs a single rewrite of each index. Until then they are found
+     *  by contains, typeOf and find, but not listed. Batches nest: only
+     *  the flush ending the outermost one merges them. */
+    void batch() {
+        if (_batch == null) {
+            _batch = new HashMap<>();
+            _batchNames = new ArrayList<>();
+        }
+        _batchDepth += 1;
+    }
+
+    /** End a batch, merging its objects into the indices unless it is
+     *  nested in another. */
+    void flush() {
+        if (_batch == null) {
+            return;
+        }
+        _batchDepth -= 1;
+        if (_batchDepth > 0) {
+            return;
+        }
+        if (!_batch.isEmpty()) {
+            ArrayList<byte[]> entries = readEntries(index(), ENTRY_LENGTH);
+            int before = entries.size();
+            entries.addAll(_batch.values());
+            entries.sort(Pack::compareEntries);
+            writeIndex(_indexFile, entries);
+            _index = null;
+            extendFilter(before, _batch.keySet());
+        }
+        if (!_batchNames.isEmpty()) {
+            ArrayList<byte[]> entries =
+                    readEntries(names(), NAME_ENTRY_LENGTH);
+            entries.addAll(_batchNames);
+            entries.sort(Pack::compareEntries);
+            ArrayList<byte[]> unique = new ArrayList<>();
+            for (byte[] entry : entries) {
+                if (unique.isEmpty() || compareEntries(entry,
+                        unique.get(unique.size() - 1)) != 0) {
+                    unique.add(entry);
+                }
+            }
+            writeIndex(_namesFile, unique);
+            _names = null;
+        }
+        _batch = null;
+        _batchNames = null;
+    }
+
+    /** Rewrite the pack with only some of its objects, dropping the
+     *  others and the names of dropped blobs. Objects keep the order they
+     *  were written in. The new data file and indices are written and
+     *  synced beside the old ones first; a synced mark then commits them,
+     *  and only after it are they renamed over the old ones, so a crash
+     *  leaves either the old pack whole or a mark that recover finishes
+     *  from. The Bloom filter is rebuilt over what is left.
+     * @param live -- hashes of the objects to keep. */
+    void retain(Set<String> live) {
+        ArrayList<byte[]> kept = new ArrayList<>();
+        for (byte[] entry : readEntries(index(), ENTRY_LENGTH)) {
+            if (live.contains(toHex(Arrays.copyOf(entry, HASH_LENGTH)))) {
+                kept.add(entry);
+            }
+        }
+        kept.sort(Comparator.comparingLong(
+                entry -> ByteBuffer.wrap(entry).getLong(HASH_LENGTH + 1)));
+        ArrayList<byte[]> entries = new ArrayList<>();
+        long offset = 0;
+        try (FileChannel out = FileChannel.open(retained(_dataFile).toPath(),
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (byte[] entry : kept) {
+                ByteBuffer fields = ByteBuffer.wrap(entry);
+                long from = fields.getLong(HASH_LENGTH + 1);
+                int length = fields.getInt(HASH_LENGTH + 1 + Long.BYTES);
+                ByteBuffer record = region(from - RECORD_HEADER_LENGTH,
+                        RECORD_HEADER_LENGTH + length);
+                offset += record.remaining();
+                while (record.hasRemaining()) {
+                    out.write(record);
+                }
+                ByteBuffer moved = ByteBuffer.wrap(entry.clone());
+                moved.putLong(HASH_LENGTH + 1, offset - length);
+                entries.add(moved.array());
+            }
+            out.force(true);
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        entries.sort(Pack::compareEntries);
+        ArrayList<byte[]> names = new ArrayList<>();
+        for (byte[] entry : readEntries(names(), NAME_ENTRY_LENGTH)) {
+            if (live.contains(toHex(Arrays.copyOfRange(entry, HASH_LENGTH,
+                    NAME_ENTRY_LENGTH)))) {
+                names.add(entry);
+            }
+        }
+        try {
+            writeEntries(retained(_indexFile), entries);
+            writeEntries(retained(_namesFile), names);
+            File mark = new File(_myPath + RETAIN_MARK);
+            try (FileOutputStream stream = new FileOutputStream(mark)) {
+                stream.getFD().sync();
+            }
+            Journal.syncDirectory(new File(_myPath));
+        } catch (IOException e) {
+            e.printStackTrace();
+            return;
+        }
+        recover();
+        _index = null;
+        _windows.clear();
+        _names = null;
+        rebuildFilter();
+    }
+
+    /** Finish a retain that was cut short. Once its mark is written, the
+     *  new files left are renamed over the old ones; before that they
+     *  are incomplete, and deleted. */
+    void recover() {
+        File mark = new File(_myPath + RETAIN_MARK);
+        boolean committed = mark.exists();
+        for (File file : new File[] {_dataFile, _indexFile, _namesFile}) {
+            File retained = retained(file);
+            if (!retained.exists()) {
+                continue;
+            }
+            try {
+                if (committed) {
+                    Files.move(retained.toPath(), file.toPath(),
+                            StandardCopyOption.REPLACE_EXISTING,
+                            StandardCopyOption.ATOMIC_MOVE);
+                } else {
+                    Files.delete(retained.toPath());
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+        if (committed) {
+            Journal.syncDirectory(new File(_myPath));
+            mark.delete();
+        }
+    }
+
+    /** Get the trees restored from this pack so far, by hash. Checkout
+     *  restores trees from several threads at once.
+     * @return -- the trees. */
+    Map<String, Tree> trees() {
+        return _trees;
+    }
+
+    /** Get hashes of all objects of a type starting with a prefix.
+     * @param prefix -- abbreviated hex hash
+     * @param type -- COMMIT or BLOB
+     * @return -- hashes of the objects, in sorted order. */
+    ArrayList<String> withPrefix(String prefix, byte type) {
+        ArrayList<String> result = new ArrayList<>();
+        if (!prefix.matches("[0-9a-f]{1," + (2 * HASH_LENGTH) + "}")) {
+            return result;
+        }
+        StringBuilder low = new StringBuilder(prefix);
+        while (low.length() < 2 * HASH_LENGTH) {
+            low.append('0');
+        }
+        ByteBuffer index = index();
+        for (int i = lowerBound(index, ENTRY_LENGTH, toRaw(low.toString()),
+                HASH_LENGTH); i < size(); i += 1) {
+            String hash = hashAt(i);
+            if (!hash.startsWith(prefix)) {
+                break;
+            }
+            if (index.get(entryPosition(i) + HASH_LENGTH) == type) {
+                result.add(hash);
+            }
+        }
+        return result;
+    }
+
+    /** Get hashes of all blobs ever stored under a file name.
+     * @param name -- file name
+     * @return -- hashes of the blobs. */
+    ArrayList<String> blobsNamed(String name) {
+        ArrayList<String> result = new ArrayList<>();
+        byte[] key = toRaw(sha1(name));
+        ByteBuffer names = names();
+        int count = names.getInt(MAGIC.length);
+        byte[] raw = new byte[HASH_LENGTH];
+        for (int i = lowerBound(names, NAME_ENTRY_LENGTH, key, HASH_LENGTH);
+             i < count; i += 1) {
+            int position = HEADER_LENGTH + i * NAME_ENTRY_LENGTH;
+            if (compareAt(names, position, key, HASH_LENGTH) != 0) {
+                break;
+            }
+            ByteBuffer entry = names.duplicate();
+            entry.position(position + HASH_LENGTH);
+            entry.get(raw);
+            result.add(toHex(raw));
+        }
+        return result;
+    }
+
+    /** Get hashes of all objects of a type, in sorted order.
+     * @param type -- COMMIT or BLOB
+     * @return -- hashes of the objects. */
+    ArrayList<String> hashesOf(byte type) {
+        return hashStream(type)
+                .collect(Collectors.toCollection(ArrayList::new));
+    }
+
+    /** Stream hashes of all objects of a type, in sorted order, reading
+     *  the index only as far as the stream is consumed.
+     * @param type -- COMMIT or BLOB
+     * @return -- hashes of the objects. */
+    Stream<String> hashStream(byte type) {
+        ByteBuffer index = index();
+        return IntStream.range(0, size())
+                .filter(i -> index.get(entryPosition(i) + HASH_LENGTH) == type)
+                .mapToObj(this::hashAt);
+    }
+
+    /** Number of objects in the pack.
+     * @return -- object count. */
+    int size() {
+        return index().getInt(MAGIC.length);
+    }
+
+    /* **********************************
+     *          Index-Handling          *
+     ********************************** */
+
+    /** Binary search the index for a hash.
+     * @param hash -- object hash
+     * @return -- entry number if found, otherwise (-(insertion point) - 1). */
+    private int search(String hash) {
+        byte[] key = toRaw(hash);
+        ByteBuffer index = index();
+        int low = lowerBound(index, ENTRY_LENGTH, key, HASH_LENGTH);
+        if (low < size() && compareAt(index, entryPosition(low),
+                key, HASH_LENGTH) == 0) {
+            return low;
+        }
+        return -(low + 1);
+    }
+
+    /** Get the index entry of an object, from the index or the batch.
+     * @param hash -- object hash
+     * @return -- view on the entry, or null if not in the pack. */
+    private ByteBuffer entryOf(String hash) {
+        int entry = search(hash);
+        if (entry >= 0) {
+            return index().slice(entryPosition(entry), ENTRY_LENGTH);
+        }
+        if (_batch != null && _batch.containsKey(hash)) {
+            return ByteBuffer.wrap(_batch.get(hash));
+        }
+        return null;
+    }
+
+    /** Binary search a sorted index for the first entry not below KEY.
+     * @param index -- index buffer, starting with magic and entry count
+     * @param entryLength -- length of an entry
+     * @param key -- raw key
+     * @param keyLength -- number of leading entry bytes compared to KEY
+     * @return -- the entry number, or the entry count if all are below. */
+    private static int lowerBound(ByteBuffer index, int entryLength,
+                                  byte[] key, int keyLength) {
+        int low = 0, high = index.getInt(MAGIC.length);
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int position = HEADER_LENGTH + mid * entryLength;
+            if (compareAt(index, position, key, keyLength) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /** Compare the raw key stored at POSITION of INDEX to KEY.
+     * @param index -- index buffer
+     * @param position -- start of the stored key
+     * @param key -- raw key
+     * @param keyLength -- number of bytes compared
+     * @return -- negative, zero or positive as for compareTo. */
+    private static int compareAt(ByteBuffer index, int position, byte[] key,
+                                 int keyLength) {
+        for (int i = 0; i < keyLength; i += 1) {
+            int cmp = Integer.compare(index.get(position + i) & 0xff,
+                    key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return 0;
+    }
+
+    /** Compare two raw index entries by their leading hashes.
+     * @param entry1 -- raw entry
+     * @param entry2 -- raw entry
+     * @return -- negative, zero or positive as for compareTo. */
+    private static int compareEntries(byte[] entry1, byte[] entry2) {
+        int length = entry1.length == ENTRY_LENGTH
+                ? HASH_LENGTH : NAME_ENTRY_LENGTH;
+        return compareAt(ByteBuffer.wrap(entry1), 0, entry2, length);
+    }
+
+    /** Hex hash of an index entry.
+     * @param entry -- entry number
+     * @return -- hash of the entry. */
+    String hashAt(int entry) {
+        byte[] raw = new byte[HASH_LENGTH];
+        ByteBuffer index = index().duplicate();
+        index.position(entryPosition(entry));
+        index.get(raw);
+        return toHex(raw);
+    }
+
+    /** Position of an entry in the index file.
+     * @param entry -- entry number
+     * @return -- byte position. */
+    private static int entryPosition(int entry) {
+        return HEADER_LENGTH + entry * ENTRY_LENGTH;
+    }
+
+    /** Build one raw index entry.
+     * @param hash -- object hash
+     * @param type -- object type
+     * @param offset -- offset of the content in the data file
+     * @param length -- length of the content
+     * @return -- raw entry. */
+    private static byte[] entry(String hash, byte type,
+                                long offset, int length) {
+        ByteBuffer result = ByteBuffer.allocate(ENTRY_LENGTH);
+        result.put(toRaw(hash)).put(type).putLong(offset).putInt(length);
+        return result.array();
+    }
+
+    /** Copy out all raw entries of a sorted index.
+     * @param index -- index buffer
+     * @param entryLength -- length of an entry
+     * @return -- entries in sorted order. */
+    private static ArrayList<byte[]> readEntries(ByteBuffer index,
+                                                 int entryLength) {
+        ArrayList<byte[]> result = new ArrayList<>();
+        int count = index.getInt(MAGIC.length);
+        index = index.duplicate();
+        index.position(HEADER_LENGTH);
+        for (int i = 0; i < count; i += 1) {
+            byte[] entry = new byte[entryLength];
+            index.get(entry);
+            result.add(entry);
+        }
+        return result;
+    }
+
+    /** Rewrite a sorted index with ENTRIES. Written to a temporary file
+     *  first and renamed over the old index, so readers never see half
+     *  of it.
+     * @param file -- index file
+     * @param entries -- sorted raw entries. */
+    private void writeIndex(File file, ArrayList<byte[]> entries) {
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            writeEntries(temp, entries);
+            Files.move(temp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /** Write a sorted index with ENTRIES into FILE and sync it.
+     * @param file -- file to write
+     * @param entries -- sorted raw entries
+     * @throws IOException -- if writing fails. */
+    private static void writeEntries(File file, ArrayList<byte[]> entries)
+            throws IOException {
+        FileOutputStream stream = new FileOutputStream(file);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(stream))) {
+            out.write(MAGIC);
+            out.writeInt(entries.size());
+            for (byte[] entry : entries) {
+                out.write(entry);
+            }
+            out.flush();
+            stream.getFD().sync();
+        }
+    }
+
+    /** Get where retain writes the new copy of a file of the pack.
+     * @param file -- data file or index
+     * @return -- the new copy. */
+    private static File retained(File file) {
+        return new File(file.getPath() + RETAINED_SUFFIX);
+    }
+
+    /* **********************************
+     *          Filter-Handling         *
+     ********************************** */
+
+    /** The Bloom filter, read on first use and rebuilt if it misses
+     *  entries of the index or holds more objects than it has room for.
+     * @return -- the filter. */
+    private ObjectFilter filter() {
+        if (_filter == null) {
+            _filter = ObjectFilter.read(_filterFile);
+        }
+        if (_filter == null || _filter.indexed() != size()
+                || _filter.isFull()) {
+            rebuildFilter();
+        }
+        return _filter;
+    }
+
+    /** Rebuild the Bloom filter from the index and the loose objects,
+     *  with room for twice as many, and write it if the pack exists. */
+    private void rebuildFilter() {
+        ArrayList<String> loose = getAllDirectorysFrom(_home + PATH_COMMITS);
+        loose.addAll(getAllDirectorysFrom(_home + PATH_BLOBS));
+        loose.removeIf(hash -> hash.length() != 2 * HASH_LENGTH);
+        int count = size();
+        ObjectFilter filter = new ObjectFilter(2 * (count + loose.size()));
+        byte[] raw = new byte[HASH_LENGTH];
+        for (int i = 0; i < count; i += 1) {
+            index().get(entryPosition(i), raw);
+            filter.add(raw);
+        }
+        for (String hash : loose) {
+            filter.add(toRaw(hash));
+        }
+        filter.indexed(count);
+        _filter = filter;
+        if (new File(_myPath).isDirectory()) {
+            filter.write(_filterFile);
+        }
+    }
+
+    /** Add objects that just entered the index to the Bloom filter. A
+     *  filter that was stale already is dropped instead, to be rebuilt
+     *  on next use.
+     * @param before -- entries of the index before them
+     * @param hashes -- their hashes. */
+    private void extendFilter(int before, Collection<String> hashes) {
+        if (_filter == null) {
+            _filter = ObjectFilter.read(_filterFile);
+        }
+        if (_filter == null || _filter.indexed() != before) {
+            _filter = null;
+            return;
+        }
+        for (String hash : hashes) {
+            _filter.add(toRaw(hash));
+        }
+        _filter.indexed(size());
+        _filter.write(_filterFile);
+    }
+
+    /** The memory-mapped index, mapped on first use.
+     * @return -- index buffer. */
+    private ByteBuffer index() {
+        if (_index == null) {
+            _index = mapIndex(_indexFile);
+        }
+        return _index;
+    }
+
+    /** The memory-mapped name index, mapped on first use.
+     * @return -- name index buffer. */
+    private ByteBuffer names() {
+        if (_names == null) {
+            _names = mapIndex(_namesFile);
+        }
+        return _names;
+    }
+
+    /** Map a sorted index, or make an empty one if the file is missing.
+     * @param file -- index file
+     * @return -- index buffer. */
+    private static ByteBuffer mapIndex(File file) {
+        if (!file.exists()) {
+            ByteBuffer result = ByteBuffer.allocate(HEADER_LENGTH);
+            result.put(MAGIC).putInt(0);
+            return result;
+        }
+        return map(file);
+    }
+
+    /** Get a read-only view on LENGTH bytes of the data file from
+     *  OFFSET. Bytes within one window are sliced from the window, mapped
+     *  on first use; bytes across two are mapped on their own.
+     * @param offset -- offset in the data file
+     * @param length -- number of bytes
+     * @return -- view on the bytes. */
+    private ByteBuffer region(long offset, int length) {
+        long window = offset / WINDOW_SIZE;
+        int start = (int) (offset - window * WINDOW_SIZE);
+        if ((long) start + length > WINDOW_SIZE) {
+            return map(_dataFile, offset, length);
+        }
+        ByteBuffer mapped = _windows.get(window);
+        if (mapped == null || start + length > mapped.limit()) {
+            mapped = map(_dataFile, window * WINDOW_SIZE, WINDOW_SIZE);
+            _windows.put(window, mapped);
+        }
+        return mapped.slice(start, length);
+    }
+
+    /** Map a whole file read-only.
+     * @param file -- File
+     * @return -- mapped buffer. */
+    private static MappedByteBuffer map(File file) {
+        return map(file, 0, Long.MAX_VALUE);
+    }
+
+    /** Map part of a file read-only, as much of it as there is.
+     * @param file -- File
+     * @param position -- where the part starts
+     * @param size -- most bytes to map
+     * @return -- mapped buffer. */
+    private static MappedByteBuffer map(File file, long position,
+                                        long size) {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.READ)) {
+            return channel.map(FileChannel.MapMode.READ_ONLY, position,
+                    Math.min(size, channel.size() - position));
+        } catch (IOException e) {
+            throw new GitletException("Cannot read " + file.getPath());
+        }
+    }
+
+    /* **********************************
+     *         Static-Utilities         *
+     ********************************** */
+
+    /** Convert a 40-digit hex hash to its 20 raw bytes.
+     * @param hash -- hex hash
+     * @return -- raw hash. */
+    static byte[] toRaw(String hash) {
+        byte[] result = new byte[HASH_LENGTH];
+        for (int i = 0; i < HASH_LENGTH; i += 1) {
+            result[i] = (byte) Integer.parseInt(
+                    hash.substring(2 * i, 2 * i + 2), 16);
+        }
+        return result;
+    }
+
+    /** Convert 20 raw bytes to a 40-digit hex hash.
+     * @param raw -- raw hash
+     * @return -- hex hash. */
+    static String toHex(byte[] raw) {
+        char[] result = new char[2 * raw.length];
+        for (int i = 0; i < raw.length; i += 1) {
+            result[2 * i] = HEX_DIGITS[(raw[i] >> 4) & 0xf];
+            result[2 * i + 1] = HEX_DIGITS[raw[i] & 0xf];
+        }
+        return new String(result);
+    }
+
+    /** Working directory of the repository, "" for local. */
+    private String _home;
+    /** Path of this pack. */
+    private String _myPath;
+    /** The data file. */
+    private File _dataFile;
+    /** The index file. */
+    private File _indexFile;
+    /** The name index file. */
+    private File _namesFile;
+    /** The Bloom filter file. */
+    private File _filterFile;
+    /** Bloom filter, null until used. */
+    private ObjectFilter _filter;
+    /** Mapped index, null until used. */
+    private ByteBuffer _index;
+    /** Mapped windows of the data file, by number. Checkout finds blobs
+     *  from several threads at once. */
+    private ConcurrentHashMap<Long, ByteBuffer> _windows =
+            new ConcurrentHashMap<>();
+    /** Mapped name index, null until used. */
+    private ByteBuffer _names;
+    /** Index entries of the batch by hash, null outside a batch. */
+    private HashMap<String, byte[]> _batch;
+    /** Name index entries of the batch, null outside a batch. */
+    private ArrayList<byte[]> _batchNames;
+    /** Number of batches started and not yet flushed. */
+    private int _batchDepth;
+    /** Trees restored from the pack, by hash. */
+    private ConcurrentHashMap<String, Tree> _trees =
+            new ConcurrentHashMap<>();
+
+    /** Object types. */
+    static final byte COMMIT = 1, BLOB = 2, TREE = 3, CHUNK = 4;
+    /** Length of a raw hash. */
+    static final int HASH_LENGTH = 20;
+    /** Digits of hex hashes. */
+    private static final char[] HEX_DIGITS =
+            "0123456789abcdef".toCharArray();
+    /** Magic bytes starting the index file. */
+    private static final byte[] MAGIC = {'G', 'I', 'D', 'X'};
+    /** Length of the index header: magic and entry count. */
+    private static final int HEADER_LENGTH = MAGIC.length + Integer.BYTES;
+    /** Length of the header of a record of the data file: hash, type
+     *  and length. */
+    private static final int RECORD_HEADER_LENGTH =
+            HASH_LENGTH + 1 + Integer.BYTES;
+    /** Bytes buffered while streaming into the data file. */
+    private static final int BUFFER_SIZE = 1 << 16;
+    /** Bytes of the data file mapped at a time. */
+    private static final long WINDOW_SIZE = 1L << 30;
+    /** Length of an index entry: hash, type, offset and length. */
+    private static final int ENTRY_LENGTH =
+            HASH_LENGTH + 1 + Long.BYTES + Integer.BYTES;
+    /** Length of a name index entry: name hash and blob hash. */
+    private static final int NAME_ENTRY_LENGTH = 2 * HASH_LENGTH;
+    /** Convenience for file names. */
+    static final String DATA_FILE = "objects.pack",
+            INDEX_FILE = "objects.idx",
+            NAMES_FILE = "names.idx",
+            FILTER_FILE = "objects.bloom";
+    /** Mark committing the files a retain wrote. */
+    private static final String RETAIN_MARK = "retain.done";
+    /** Suffix of the files a retain writes. */
+    private static final String RETAINED_SUFFIX = ".new";
+
+}
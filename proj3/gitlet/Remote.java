@@ -3,6 +3,10 @@ package gitlet;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.function.Function;
+import java.util.function.Predicate;
 
 import static gitlet.Branch.HEADCOMMIT_FOLDER;
 import static gitlet.GitletOperator.*;
@@ -22,9 +26,8 @@ public class Remote {
     Remote(String remoteName, String remoteDirectory) {
         _myName = remoteName;
         _myDirectory = remoteDirectory;
+        _transport = new LocalTransport(remoteDirectory);
         _branches = getMyBranches();
-        _commits = getMyCommits();
-        _blobs = getMyBlobs();
         _currentBranch = getMyCurrentBranch();
     }
 
@@ -60,12 +63,6 @@ public class Remote {
         return _branches;
     }
 
-    /** Get my commits.
-     * @return -- commits in remote. */
-    String[] myCommits() {
-        return _commits;
-    }
-
     /** Get my head commits.
      * @return -- head commit in remote. */
     String myHeadCommit() {
@@ -84,22 +81,6 @@ public class Remote {
         return doListToStrings(branches);
     }
 
-    /** Collect commit hashes in the remote.
-     * @return -- commits in remote. */
-    private String[] getMyCommits() {
-        ArrayList<String> commits = new ArrayList<>();
-        commits.addAll(getAllDirectorysFrom(_myDirectory + PATH_COMMITS));
-        return doListToStrings(commits);
-    }
-
-    /** Collect files in Blobs in the remote.
-     * @return -- files in blobs of remote. */
-    private String[] getMyBlobs() {
-        ArrayList<String> files =
-                getAllDirectorysFrom(_myDirectory + PATH_BLOBS);
-        return doListToStrings(files);
-    }
-
     /** Collect current branch in the remote.
      * @return -- current branch of remote. */
     private Branch getMyCurrentBranch() {
@@ -128,18 +109,6 @@ public class Remote {
         return false;
     }
 
-    /** Check if has the file in remote's Blobs.
-     * @param fileHash -- file hash
-     * @return -- check result. */
-    boolean hasFile(String fileHash) {
-        for (String file : _blobs) {
-            if (file.equals(fileHash)) {
-                return true;
-            }
-        }
-        return false;
-    }
-
     /** Create a branch in remote from init. Update _branches.
      * @param branchName -- branch name.*/
     void createBranch(String branchName) {
@@ -153,39 +122,100 @@ public class Remote {
         _currentBranch = new Branch().restoreRemoteBranch(_myDirectory, branchName);
     }
 
-    /** Add Commit. Copying local commit to remote.
-     * @param localCommit -- commit to added over. */
-    void addCommit(Commit localCommit) {
-
-        File sourceCommit = new File(localCommit.myPath());
-        File targetCommit =
-                new File(_myDirectory + PATH_COMMITS + localCommit.myHash());
-        copyFiles(sourceCommit, targetCommit);
-
-        for (String file : localCommit.myFiles()) {
-            if (!hasFile(file)) {
-                File sourceFile = new File(PATH_BLOBS + file);
-                File targetFile = new File(_myDirectory + PATH_BLOBS + file);
-                copyFiles(sourceFile, targetFile);
+    /** Fetch the commits leading to a remote commit that this repository
+     *  lacks, with the blobs it lacks.
+     * @param head -- remote commit hash
+     * @return -- fetched commits, parents first. */
+    ArrayList<Commit> fetch(String head) {
+        ArrayList<Commit> commits = missing(head,
+                _transport::restoreCommit, GitletOperator::existCommit);
+        _transport.download(missingBlobs(commits, myBlobs()::hasFileHash),
+                commits);
+        return commits;
+    }
+
+    /** Push the local commits leading to HEAD that the remote lacks, with
+     *  the blobs it lacks, and move the chosen branch onto HEAD.
+     * @param head -- local commit hash. */
+    void push(String head) {
+        ArrayList<Commit> commits = missing(head,
+                myGraph()::get, _transport::hasCommit);
+        _transport.upload(missingBlobs(commits, _transport::hasBlob),
+                commits);
+        for (Commit commit : commits) {
+            _currentBranch.addCommit(commit.myHash());
+        }
+        _currentBranch.changeMyHeadCommitTo(head);
+    }
+
+    /** Walk back from HEAD, stopping at commits the receiving side has.
+     * @param head -- commit hash
+     * @param restore -- restores commits of the sending side
+     * @param has -- tells commits the receiving side has
+     * @return -- commits the receiving side lacks, parents first. */
+    private static ArrayList<Commit> missing(String head,
+                                             Function<String, Commit> restore,
+                                             Predicate<String> has) {
+        ArrayList<Commit> result = new ArrayList<>();
+        HashSet<String> seen = new HashSet<>();
+        ArrayList<Commit> stack = new ArrayList<>();
+        ArrayList<Integer> next = new ArrayList<>();
+        if (has.test(head)) {
+            return result;
+        }
+        seen.add(head);
+        stack.add(restore.apply(head));
+        next.add(0);
+        while (!stack.isEmpty()) {
+            int top = stack.size() - 1;
+            Commit commit = stack.get(top);
+            String[] parents = commit.myParents();
+            int i = next.get(top);
+            if (parents == null || i >= parents.length) {
+                result.add(commit);
+                stack.remove(top);
+                next.remove(top);
+                continue;
+            }
+            next.set(top, i + 1);
+            if (seen.add(parents[i]) && !has.test(parents[i])) {
+                stack.add(restore.apply(parents[i]));
+                next.add(0);
             }
         }
-
-        _currentBranch.addCommit(localCommit.myHash());
-        _currentBranch.changeMyHeadCommitTo(localCommit.myHash());
+        return result;
+    }
+
+    /** Collect the blobs of COMMITS the receiving side lacks.
+     * @param commits -- commits being sent
+     * @param has -- tells blobs the receiving side has
+     * @return -- blob hashes. */
+    private static ArrayList<String> missingBlobs(ArrayList<Commit> commits,
+                                                  Predicate<String> has) {
+        LinkedHashSet<String> result = new LinkedHashSet<>();
+        for (Commit commit : commits) {
+            if (commit.myFiles() == null) {
+                continue;
+            }
+            for (String file : commit.myFiles()) {
+                if (!result.contains(file) && !has.test(file)) {
+                    result.add(file);
+                }
+            }
+        }
+        return new ArrayList<>(result);
     }
 
 
+    /** Transport to the remote. */
+    private Transport _transport;
     /** Name of the remote. */
     private String _myName;
     /** Directory of the remote. */
     private String _myDirectory;
     /** Branch names contained in remote. */
     private String[] _branches;
-    /** Files in Blobs contained in remote. */
-    private String[] _blobs;
     /** Current branch in remote. */
     private Branch _currentBranch;
-    /** Commit hashes contained in the remote. */
-    private String[] _commits;
 
 }
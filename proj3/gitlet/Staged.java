@@ -2,7 +2,19 @@ package gitlet;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
 
 import static gitlet.Doc.NAME_FOLDER;
 import static gitlet.GitletOperator.*;
@@ -12,9 +24,8 @@ import static gitlet.GitletOperator.*;
  */
 class Staged {
 
-    /** Get the staged area ready. */
+    /** Get the staged area ready. Nothing is read until asked for. */
     Staged() {
-        _files = getAllDocs();
     }
 
     /** Init the Staged Area in init mode. */
@@ -27,98 +38,154 @@ class Staged {
         }
     }
 
-    /** Add file folder with name.txt and content in Staged place. Assume exist.
-     * @param doc -- doc to be added. */
-    void add(Doc doc) {
-        String hash = doc.myHash();
-        String name = doc.myName();
-
-        if (myStaged().hasFileName(name)) {
-            deleteByNameInMyStaged(name);
+    /** Add files from Working place. Each file is read once, hashed while
+     *  it is copied into Staged; several files are hashed at a time on a
+     *  bounded pool, then put in place one after another. The names
+     *  staged and removed are read once for all of them. If a file
+     *  cannot be read, nothing is staged and the copies are dropped.
+     * @param names -- names of files to be added. Assume exist. */
+    void add(List<String> names) {
+        ArrayList<Doc> copies = new ArrayList<>();
+        if (names.size() == 1) {
+            copies.add(copyOverFromWorking(names.get(0)));
+        } else {
+            int threads = Math.min(names.size(),
+                    Runtime.getRuntime().availableProcessors());
+            ExecutorService pool = Executors.newFixedThreadPool(threads);
+            GitletException failure = null;
+            try {
+                ArrayList<Callable<Doc>> tasks = new ArrayList<>();
+                for (String name : names) {
+                    tasks.add(() -> copyOverFromWorking(name));
+                }
+                for (Future<Doc> copy : pool.invokeAll(tasks)) {
+                    try {
+                        copies.add(copy.get());
+                    } catch (ExecutionException e) {
+                        if (failure == null) {
+                            failure = e.getCause() instanceof GitletException
+                                    ? (GitletException) e.getCause()
+                                    : new GitletException(
+                                            e.getCause().toString());
+                        }
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                failure = new GitletException("Add was interrupted.");
+            } finally {
+                pool.shutdown();
+            }
+            if (failure != null) {
+                for (String name : names) {
+                    copyOf(name).delete();
+                }
+                throw failure;
+            }
         }
-        if (!myBlobs().hasFileHash(hash)) {
-            copyOverFromWorking(doc);
-            _files.add(new Doc(name, hash,
-                    PATH_STAGED + hash + CONTENT_FOLDER));
+        HashMap<String, String> staged = new HashMap<>();
+        files().forEach(doc -> staged.put(doc.myName(), doc.myHash()));
+        String[] removedNames = readFrom(REMOVED_NAMES);
+        LinkedHashSet<String> removed = new LinkedHashSet<>();
+        if (removedNames != null) {
+            removed.addAll(Arrays.asList(removedNames));
+        }
+        boolean unremoved = false;
+        for (Doc copy : copies) {
+            add(copy, staged);
+            unremoved |= removed.remove(copy.myName());
         }
-        if (existFileNameInRemoved(name)) {
-            deleteFromRemovedNames(name);
+        if (unremoved) {
+            writeInto(REMOVED_NAMES, false,
+                    doListToStrings(new ArrayList<>(removed)));
         }
     }
 
-    /** Copy over file from Working place.
-     * @param doc -- doc to be copied over. */
-    private void copyOverFromWorking(Doc doc) {
-        try {
-            new File(PATH_STAGED + doc.myHash()).mkdir();
-            File name = new File(PATH_STAGED
-                    + doc.myHash() + "/" + NAME_FOLDER);
-            name.createNewFile();
-            writeInto(name, false, doc.myName());
-
-            new File(PATH_STAGED + doc.myHash()
-                    + "/" + CONTENT_FOLDER).mkdir();
+    /** Put a copy made by copyOverFromWorking in place, with name.txt
+     *  and content in its folder, or drop it if already committed.
+     * @param copy -- doc to be added
+     * @param staged -- hash of each name staged, kept up to date. */
+    private void add(Doc copy, HashMap<String, String> staged) {
+        String hash = copy.myHash();
+        String name = copy.myName();
 
-            File source = new File(doc.myPath());
-            File target = new File(PATH_STAGED
-                    + doc.myHash() + CONTENT_FOLDER + doc.myName());
-            copyFiles(source, target);
+        String previous = staged.remove(name);
+        if (previous != null) {
+            deleteByHash(previous);
+        }
+        File source = copyOf(name);
+        if (!myBlobs().hasFileHash(hash)) {
+            try {
+                File target = new File(PATH_STAGED + hash + CONTENT_FOLDER
+                        + name);
+                target.getParentFile().mkdirs();
+                writeInto(PATH_STAGED + hash + "/" + NAME_FOLDER, false, name);
+                Files.move(source.toPath(), target.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+                staged.put(name, hash);
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        } else {
+            source.delete();
+        }
+    }
 
-            Doc newFile = new Doc(doc.myName(), doc.myHash(), target.getPath());
-            _files.add(newFile);
-        } catch (IOException e) {
-            e.printStackTrace();
+    /** Copy over file from Working place, hashing it on the way.
+     * @param name -- name of file to be copied over.
+     * @return -- the copy, still outside any folder of Staged. */
+    private static Doc copyOverFromWorking(String name) {
+        try {
+            String hash = Doc.hashOf(name, new File(PATH_WORKING + name),
+                    copyOf(name));
+            return new Doc(name, hash, PATH_STAGED + COPY_PREFIX);
+        } catch (IllegalArgumentException e) {
+            copyOf(name).delete();
+            throw new GitletException("Cannot add " + name + ".");
         }
     }
 
+    /** Get where a file is copied over from Working place: a plain file
+     *  of Staged, whatever directory the file is in, so "%" and "/" of
+     *  its name are escaped.
+     * @param name -- name of the file
+     * @return -- the copy. */
+    private static File copyOf(String name) {
+        return new File(PATH_STAGED + COPY_PREFIX
+                + name.replace("%", "%25").replace("/", "%2F"));
+    }
+
     /** Show if Staged is empty without those in removed(marked) files.
      * @return -- check result */
     boolean isEmptyForCommit() {
-        if (myStaged().isEmpty()) {
-            return true;
-        }
-        for (Doc doc : myStaged().files()) {
-            if (!existFileNameInRemoved(doc.myName())) {
-                return false;
-            }
-        }
-        return true;
+        return files().allMatch(doc -> existFileNameInRemoved(doc.myName()));
     }
 
     /* **********************************
      *          Access-Methods          *
      ********************************** */
 
-    /** Get files in Staged.
+    /** Get files in Staged. Names are only read as the stream reaches
+     *  them.
      * @return -- return files in Staged. */
-    ArrayList<Doc> files() {
-        return _files;
-    }
-
-    /* **********************************
-     *        Parameter-Building        *
-     ********************************** */
-
-    /** Get all files in Staged. (Get names(hash) of all directories).
-     * @return -- gather all files in Staged. */
-    private ArrayList<Doc> getAllDocs() {
-        ArrayList<Doc> docs = new ArrayList<>();
-        ArrayList<String> hashs = getAllDirectorysFrom(PATH_STAGED);
-        if (!hashs.isEmpty()) {
-            for (String hash : hashs) {
-                String name =
-                        readFrom(PATH_STAGED + hash + "/" + NAME_FOLDER)[0];
-                docs.add(new Doc(name, hash,
+    Stream<Doc> files() {
+        return getAllDirectorysFrom(PATH_STAGED).stream()
+                .map(hash -> new Doc(getNameByHash(hash), hash,
                         PATH_STAGED + hash + CONTENT_FOLDER));
-            }
-        }
-        return docs;
     }
 
     /* **********************************
      *              Methods             *
      ********************************** */
 
+    /** Get the copies an add that did not finish left in Staged.
+     * @return -- the copies. */
+    File[] leftovers() {
+        File[] result = new File(PATH_STAGED).listFiles(
+                (directory, name) -> name.startsWith(COPY_PREFIX));
+        return result == null ? new File[0] : result;
+    }
+
     /** Show if Staged has new files.
      * @return -- if is empty. */
     boolean isEmpty() {
@@ -161,12 +228,7 @@ class Staged {
      * @param fileHash -- file hash.
      * @return -- check result. */
     boolean hasFileHash(String fileHash) {
-        for (String hash : getAllDirectorysFrom(PATH_STAGED)) {
-            if (hash.equals(fileHash)) {
-                return true;
-            }
-        }
-        return false;
+        return new File(PATH_STAGED + fileHash).isDirectory();
     }
 
     /** Delete file in Staged by hash.
@@ -175,7 +237,6 @@ class Staged {
         File folder = new File(PATH_STAGED + hash);
         if (folder.exists()) {
             deleteFile(folder);
-            _files.remove(hash);
         }
     }
 
@@ -190,7 +251,6 @@ class Staged {
             }
             if (name[0].equals(filename)) {
                 deleteByHash(hash);
-                _files.remove(hash);
                 return;
             }
         }
@@ -228,12 +288,13 @@ class Staged {
         if (existedNames == null) {
             return;
         }
-        clearRemovedFiles();
+        ArrayList<String> names = new ArrayList<>();
         for (String name : existedNames) {
             if (!name.equals(filename)) {
-                writeInto(REMOVED_NAMES, true, name);
+                names.add(name);
             }
         }
+        writeInto(REMOVED_NAMES, false, doListToStrings(names));
     }
 
     /** Check if a file name exist in RemovedNames.
@@ -252,10 +313,10 @@ class Staged {
         return false;
     }
 
-    /** All files inside Staged Area. */
-    private ArrayList<Doc> _files = new ArrayList<>();
     /** Convenience showing content folder. */
     static final String CONTENT_FOLDER = "/content/";
+    /** Prefix of files being copied over from Working place. */
+    private static final String COPY_PREFIX = ".adding-";
     /** Removed names. */
     static final String REMOVED_NAMES = PATH_STAGED + "removedNames.txt";
 
@@ -0,0 +1,138 @@
+package gitlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static gitlet.GitletOperator.*;
+
+/** Stat cache in .gitlet/index. Remembers size, modification time and
+ *  hash of working files, so a file is only read and hashed again when
+ *  its size or modification time changed. Files may be hashed from
+ *  several threads at once.
+ *  @author Shixuan (Wayne) Li
+ */
+class StatCache {
+
+    /** Load the stat cache. */
+    StatCache() {
+        String[] lines = readFrom(PATH_INDEX);
+        if (lines == null) {
+            return;
+        }
+        for (String line : lines) {
+            String[] parts = line.split(" ", 4);
+            _entries.put(parts[3], new long[] {Long.parseLong(parts[0]),
+                Long.parseLong(parts[1])});
+            _hashes.put(parts[3], parts[2]);
+        }
+    }
+
+    /** Get the hash of a working file, rehashing it only if its stat
+     *  changed. A file modified no earlier than the cache file itself is
+     *  always rehashed, since a later change within the same tick of the
+     *  file system clock would leave its stat unchanged.
+     * @param name -- file name. Assume exist in working area.
+     * @return -- hash of the file as Doc computes it. */
+    String hashOf(String name) {
+        if (_writtenAt < 0) {
+            _writtenAt = new File(PATH_INDEX).lastModified();
+        }
+        long[] stat = statOf(name);
+        long[] cached = _entries.get(name);
+        if (cached != null && stat != null
+                && cached[0] == stat[0] && cached[1] == stat[1]
+                && (stat[1] < _writtenAt || _hashedNow.contains(name))) {
+            return _hashes.get(name);
+        }
+        String hash = new Doc(name, PATH_WORKING).myHash();
+        if (stat != null) {
+            _entries.put(name, stat);
+            _hashes.put(name, hash);
+            _hashedNow.add(name);
+            _changed = true;
+        }
+        return hash;
+    }
+
+    /** Hash working files ahead of hashOf, in parallel, so that hashOf
+     *  then answers from memory unless they change again. Files missing
+     *  from the working area are skipped.
+     * @param names -- file names. */
+    void hashAll(Collection<String> names) {
+        names.parallelStream()
+                .filter(name -> new File(PATH_WORKING + name).isFile())
+                .forEach(this::hashOf);
+    }
+
+    /** Write the stat cache back if anything was rehashed. */
+    void save() {
+        if (!_changed) {
+            return;
+        }
+        ArrayList<String> lines = new ArrayList<>();
+        for (String name : _entries.keySet()) {
+            long[] stat = _entries.get(name);
+            lines.add(stat[0] + " " + stat[1] + " "
+                    + _hashes.get(name) + " " + name);
+        }
+        writeInto(PATH_INDEX, false, doListToStrings(lines));
+        _changed = false;
+        _writtenAt = -1;
+    }
+
+    /** Forget a file, so it is hashed again on next use.
+     * @param name -- file name. */
+    void forget(String name) {
+        _hashedNow.remove(name);
+        if (_entries.remove(name) != null) {
+            _hashes.remove(name);
+            _changed = true;
+        }
+    }
+
+    /** Forget every file under a directory.
+     * @param prefix -- path of the directory, with a trailing /. */
+    void forgetUnder(String prefix) {
+        for (String name : _entries.keySet()) {
+            if (name.startsWith(prefix)) {
+                forget(name);
+            }
+        }
+    }
+
+    /** Read size and modification time of a working file.
+     * @param name -- file name
+     * @return -- {size, modification time in ms}, null if unreadable. */
+    private static long[] statOf(String name) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(
+                    new File(PATH_WORKING + name).toPath(),
+                    BasicFileAttributes.class);
+            return new long[] {attributes.size(),
+                attributes.lastModifiedTime().toMillis()};
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /** Size and modification time by file name. */
+    private ConcurrentHashMap<String, long[]> _entries =
+            new ConcurrentHashMap<>();
+    /** Hash by file name. */
+    private ConcurrentHashMap<String, String> _hashes =
+            new ConcurrentHashMap<>();
+    /** Files hashed since loading, whose entries are trusted even if
+     *  modified no earlier than the cache file. */
+    private Set<String> _hashedNow = ConcurrentHashMap.newKeySet();
+    /** Modification time of the cache file, -1 until read. */
+    private volatile long _writtenAt = -1;
+    /** If any entry changed since loading. */
+    private volatile boolean _changed;
+
+}
@@ -0,0 +1,138 @@
+package gitlet;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/** Counters for "--trace". Commands always count the files they open
+ *  through readFrom and writeInto, the bytes they hash, the commits they
+ *  restore and the working files checkout and reset rewrite. Run as
+ *  "gitlet --trace [command] ...", a command then appends a summary of
+ *  itself as one JSON line to standard error, or to FILE with
+ *  "--trace=FILE". Counters are atomic, as several files are hashed at a
+ *  time. A command run by the daemon keeps its line for the daemon to
+ *  send back, and the client writes it where its own option says.
+ *  @author Shixuan (Wayne) Li
+ */
+class Trace {
+
+    /** Start counting a command, taking the trace option off its line.
+     * @param args -- command line, maybe starting with the option
+     * @return -- the command line without the option. */
+    static String[] start(String... args) {
+        FILES.set(0);
+        HASHED.set(0);
+        COMMITS.set(0);
+        REWRITTEN.set(0);
+        _served = "";
+        _target = targetOf(args);
+        if (_target != null) {
+            String[] rest = new String[args.length - 1];
+            System.arraycopy(args, 1, rest, 0, rest.length);
+            args = rest;
+        }
+        _command = args.length > 0 ? args[0] : "";
+        _start = System.nanoTime();
+        return args;
+    }
+
+    /** Get where a command line asks its summary to go.
+     * @param args -- command line, maybe starting with the option
+     * @return -- "" for standard error, "=FILE" for FILE, null if the
+     *            command is not traced. */
+    static String targetOf(String... args) {
+        if (args.length > 0 && (args[0].equals(OPTION)
+                || args[0].startsWith(OPTION + "="))) {
+            return args[0].substring(OPTION.length());
+        }
+        return null;
+    }
+
+    /** Count a file opened. */
+    static void fileOpened() {
+        FILES.incrementAndGet();
+    }
+
+    /** Count bytes hashed.
+     * @param bytes -- number of bytes. */
+    static void hashed(long bytes) {
+        HASHED.addAndGet(bytes);
+    }
+
+    /** Count a commit restored. */
+    static void commitRestored() {
+        COMMITS.incrementAndGet();
+    }
+
+    /** Count working files written or deleted by a checkout.
+     * @param files -- number of files. */
+    static void rewritten(int files) {
+        REWRITTEN.addAndGet(files);
+    }
+
+    /** Write the summary of the command, if traced. Called once the
+     *  command ends, however it ends. */
+    static void finish() {
+        if (_target == null) {
+            return;
+        }
+        String line = String.format(Locale.ROOT,
+                "{\"command\":\"%s\",\"millis\":%.3f,\"filesOpened\":%d,"
+                + "\"bytesHashed\":%d,\"commitsRestored\":%d,"
+                + "\"filesRewritten\":%d}",
+                _command.replace("\\", "\\\\").replace("\"", "\\\""),
+                (System.nanoTime() - _start) / 1e6, FILES.get(),
+                HASHED.get(), COMMITS.get(), REWRITTEN.get());
+        if (Daemon.isServing()) {
+            _served = line;
+        } else {
+            write(line, _target);
+        }
+        _target = null;
+    }
+
+    /** Get the summary of the last command the daemon ran, for the
+     *  client to write.
+     * @return -- the summary, "" if the command was not traced. */
+    static String served() {
+        return _served;
+    }
+
+    /** Write a summary where a command line asked for it.
+     * @param line -- the summary
+     * @param target -- "" for standard error, "=FILE" for FILE. */
+    static void write(String line, String target) {
+        if (target.isEmpty()) {
+            System.err.println(line);
+        } else {
+            try (Writer out = new FileWriter(target.substring(1), true)) {
+                out.write(line + System.lineSeparator());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /** Files opened by the command. */
+    private static final AtomicLong FILES = new AtomicLong();
+    /** Bytes hashed by the command. */
+    private static final AtomicLong HASHED = new AtomicLong();
+    /** Commits restored by the command. */
+    private static final AtomicLong COMMITS = new AtomicLong();
+    /** Working files written or deleted by the command. */
+    private static final AtomicLong REWRITTEN = new AtomicLong();
+    /** Name of the command. */
+    private static String _command;
+    /** Start of the command, in nanoseconds. */
+    private static long _start;
+    /** "" to trace to standard error, "=FILE" to trace to FILE, null if
+     *  not tracing. */
+    private static String _target;
+    /** Summary of a command run by the daemon, "" if none. */
+    private static String _served = "";
+    /** The option turning tracing on. */
+    static final String OPTION = "--trace";
+
+}
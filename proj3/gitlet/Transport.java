@@ -0,0 +1,37 @@
+package gitlet;
+
+import java.util.ArrayList;
+
+/** The way objects travel between this repository and a remote. Fetch and
+ *  push first ask which commits the other side already has, so only the
+ *  missing commits and blobs are sent, each way in one batch.
+ *  @author Shixuan (Wayne) Li
+ */
+interface Transport {
+
+    /** Check if the remote has a commit.
+     * @param hash -- commit hash
+     * @return -- check result. */
+    boolean hasCommit(String hash);
+
+    /** Check if the remote has a blob.
+     * @param hash -- blob hash
+     * @return -- check result. */
+    boolean hasBlob(String hash);
+
+    /** Restore a commit of the remote.
+     * @param hash -- commit hash
+     * @return -- the commit, null if the remote lacks it. */
+    Commit restoreCommit(String hash);
+
+    /** Copy blobs and commits of the remote into the local pack.
+     * @param blobs -- blob hashes
+     * @param commits -- commits, parents first. */
+    void download(ArrayList<String> blobs, ArrayList<Commit> commits);
+
+    /** Copy local blobs and commits into the pack of the remote.
+     * @param blobs -- blob hashes
+     * @param commits -- commits, parents first. */
+    void upload(ArrayList<String> blobs, ArrayList<Commit> commits);
+
+}
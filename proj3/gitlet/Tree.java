@@ -0,0 +1,335 @@
+package gitlet;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import static gitlet.Utils.*;
+
+/** Tree objects: the files tracked by a commit, as entries sorted by name
+ *  that map a file name to its blob, or a directory name to another tree.
+ *  A tree is hashed from its entries, so commits tracking the same files
+ *  share one tree, and a commit changing a few files only makes new trees
+ *  along their paths. Trees are immutable; the ones restored from a pack
+ *  are kept for the rest of the run.
+ *  @author Shixuan (Wayne) Li
+ */
+class Tree {
+
+    /** A tree of the given entries, sorted by name.
+     * @param names -- entry names
+     * @param hashes -- blob or tree hashes
+     * @param trees -- which entries are trees
+     * @param children -- trees already at hand, by entry, or null
+     * @param source -- pack holding the missing subtrees. */
+    private Tree(String[] names, String[] hashes, boolean[] trees,
+                 Tree[] children, Pack source) {
+        _names = names;
+        _hashes = hashes;
+        _trees = trees;
+        _children = children;
+        _source = source;
+    }
+
+    /** Restore a tree from a pack, once per pack: the trees restored
+     *  are kept by the pack, and go with it.
+     * @param pack -- pack holding the tree
+     * @param hash -- tree hash
+     * @return -- the tree, or null if not in the pack. */
+    static Tree restore(Pack pack, String hash) {
+        Map<String, Tree> restored = pack.trees();
+        Tree result = restored.get(hash);
+        if (result != null) {
+            return result;
+        }
+        ByteBuffer content = pack.find(hash);
+        if (content == null) {
+            return null;
+        }
+        result = decode(content, pack);
+        result._hash = hash;
+        restored.put(hash, result);
+        return result;
+    }
+
+    /** Make a tree of files.
+     * @param files -- blob hashes by path
+     * @return -- the tree, not stored yet. */
+    static Tree of(Map<String, String> files) {
+        return EMPTY.with(files);
+    }
+
+    /* **********************************
+     *              Methods             *
+     ********************************** */
+
+    /** Get the hash of this tree.
+     * @return -- hash of the entries. */
+    String hash() {
+        if (_hash == null) {
+            _hash = sha1(TREE_KEY, encode());
+        }
+        return _hash;
+    }
+
+    /** Check if this tree has no entries.
+     * @return -- check result. */
+    boolean isEmpty() {
+        return _names.length == 0;
+    }
+
+    /** Check if a file is in this tree.
+     * @param path -- file path, directories separated by "/"
+     * @return -- check result. */
+    boolean contains(String path) {
+        return hashOf(path) != null;
+    }
+
+    /** Get the blob of a file by binary search, one level at a time.
+     * @param path -- file path, directories separated by "/"
+     * @return -- blob hash, or null if the file is not in this tree. */
+    String hashOf(String path) {
+        int slash = path.indexOf('/');
+        String name = slash < 0 ? path : path.substring(0, slash);
+        int entry = Arrays.binarySearch(_names, name);
+        if (entry < 0 || _trees[entry] != (slash >= 0)) {
+            return null;
+        }
+        if (slash < 0) {
+            return _hashes[entry];
+        }
+        return child(entry).hashOf(path.substring(slash + 1));
+    }
+
+    /** Get every file in this tree.
+     * @return -- blob hashes by path, sorted by path. */
+    TreeMap<String, String> files() {
+        TreeMap<String, String> result = new TreeMap<>();
+        collectFiles("", result);
+        return result;
+    }
+
+    /** Get the blobs of every file in this tree.
+     * @return -- blob hashes, sorted by path. */
+    ArrayList<String> blobs() {
+        return new ArrayList<>(files().values());
+    }
+
+    /** Make the tree with some files changed. Directories left empty are
+     *  dropped, and untouched subtrees are shared with this tree.
+     * @param changes -- new blob hashes by path, null to remove a file
+     * @return -- the new tree, not stored yet. */
+    Tree with(Map<String, String> changes) {
+        if (changes.isEmpty()) {
+            return this;
+        }
+        TreeMap<String, String> blobs = new TreeMap<>();
+        TreeMap<String, TreeMap<String, String>> below = new TreeMap<>();
+        for (Map.Entry<String, String> change : changes.entrySet()) {
+            String path = change.getKey();
+            int slash = path.indexOf('/');
+            if (slash < 0) {
+                blobs.put(path, change.getValue());
+            } else {
+                below.computeIfAbsent(path.substring(0, slash),
+                        k -> new TreeMap<>())
+                        .put(path.substring(slash + 1), change.getValue());
+            }
+        }
+        TreeMap<String, Tree> subtrees = new TreeMap<>();
+        for (Map.Entry<String, TreeMap<String, String>> directory
+                : below.entrySet()) {
+            int entry = Arrays.binarySearch(_names, directory.getKey());
+            Tree old = entry >= 0 && _trees[entry] ? child(entry) : EMPTY;
+            Tree now = old.with(directory.getValue());
+            subtrees.put(directory.getKey(), now.isEmpty() ? null : now);
+        }
+
+        TreeSet<String> names = new TreeSet<>(Arrays.asList(_names));
+        names.addAll(blobs.keySet());
+        names.addAll(subtrees.keySet());
+        Builder result = new Builder(names.size());
+        for (String name : names) {
+            if (subtrees.containsKey(name)) {
+                Tree subtree = subtrees.get(name);
+                if (subtree != null) {
+                    result.add(name, subtree.hash(), true, subtree);
+                }
+            } else if (blobs.containsKey(name)) {
+                if (blobs.get(name) != null) {
+                    result.add(name, blobs.get(name), false, null);
+                }
+            } else {
+                int entry = Arrays.binarySearch(_names, name);
+                result.add(name, _hashes[entry], _trees[entry],
+                        _children[entry]);
+            }
+        }
+        return result.build(_source);
+    }
+
+    /** Make sure a pack holds this tree and its subtrees. Subtrees the
+     *  pack already holds are not visited.
+     * @param pack -- pack to write into. */
+    void store(Pack pack) {
+        if (pack.contains(hash())) {
+            return;
+        }
+        for (int i = 0; i < _names.length; i += 1) {
+            if (_trees[i] && !pack.contains(_hashes[i])) {
+                child(i).store(pack);
+            }
+        }
+        pack.write(Pack.TREE, hash(), encode());
+    }
+
+    /** Add the hashes of this tree, its subtrees and its blobs to a
+     *  set. Subtrees already in it are not visited again, so trees shared
+     *  by many commits are walked once.
+     * @param marked -- hashes found so far. */
+    void mark(Set<String> marked) {
+        if (!marked.add(hash())) {
+            return;
+        }
+        for (int i = 0; i < _names.length; i += 1) {
+            if (!_trees[i]) {
+                marked.add(_hashes[i]);
+            } else if (!marked.contains(_hashes[i])) {
+                child(i).mark(marked);
+            }
+        }
+    }
+
+    /* **********************************
+     *             Encoding             *
+     ********************************** */
+
+    /** Content of this tree as stored in the pack: one "kind hash name"
+     *  line per entry.
+     * @return -- encoded tree. */
+    private byte[] encode() {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < _names.length; i += 1) {
+            result.append(_trees[i] ? TREE_KEY : BLOB_KEY).append(' ')
+                    .append(_hashes[i]).append(' ')
+                    .append(_names[i]).append('\n');
+        }
+        return result.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /** Restore a tree from its content.
+     * @param content -- content as written by encode()
+     * @param source -- pack holding its subtrees
+     * @return -- the tree. */
+    private static Tree decode(ByteBuffer content, Pack source) {
+        byte[] bytes = new byte[content.remaining()];
+        content.get(bytes);
+        String text = new String(bytes, StandardCharsets.UTF_8);
+        String[] lines = text.isEmpty() ? new String[0] : text.split("\n");
+        Builder result = new Builder(lines.length);
+        for (String line : lines) {
+            int first = line.indexOf(' ');
+            int second = line.indexOf(' ', first + 1);
+            result.add(line.substring(second + 1),
+                    line.substring(first + 1, second),
+                    line.substring(0, first).equals(TREE_KEY), null);
+        }
+        return result.build(source);
+    }
+
+    /** Put every file under this tree into a map.
+     * @param prefix -- path of this tree, "" or ending in "/"
+     * @param result -- blob hashes by path. */
+    private void collectFiles(String prefix, Map<String, String> result) {
+        for (int i = 0; i < _names.length; i += 1) {
+            if (_trees[i]) {
+                child(i).collectFiles(prefix + _names[i] + "/", result);
+            } else {
+                result.put(prefix + _names[i], _hashes[i]);
+            }
+        }
+    }
+
+    /** Get the subtree of an entry, restoring it on first use.
+     * @param entry -- entry number
+     * @return -- the subtree. */
+    private Tree child(int entry) {
+        if (_children[entry] == null) {
+            _children[entry] = restore(_source, _hashes[entry]);
+        }
+        return _children[entry];
+    }
+
+    /** Collects entries, in order, into a tree. */
+    private static class Builder {
+
+        /** A builder for SIZE entries at most.
+         * @param size -- capacity. */
+        Builder(int size) {
+            _size = 0;
+            _bNames = new String[size];
+            _bHashes = new String[size];
+            _bTrees = new boolean[size];
+            _bChildren = new Tree[size];
+        }
+
+        /** Add an entry after the others.
+         * @param name -- entry name
+         * @param hash -- blob or tree hash
+         * @param tree -- if the entry is a tree
+         * @param child -- the subtree if at hand, or null. */
+        void add(String name, String hash, boolean tree, Tree child) {
+            _bNames[_size] = name;
+            _bHashes[_size] = hash;
+            _bTrees[_size] = tree;
+            _bChildren[_size] = child;
+            _size += 1;
+        }
+
+        /** Make the tree.
+         * @param source -- pack holding missing subtrees
+         * @return -- the tree. */
+        Tree build(Pack source) {
+            return new Tree(Arrays.copyOf(_bNames, _size),
+                    Arrays.copyOf(_bHashes, _size),
+                    Arrays.copyOf(_bTrees, _size),
+                    Arrays.copyOf(_bChildren, _size), source);
+        }
+
+        /** Number of entries added. */
+        private int _size;
+        /** Entry names. */
+        private String[] _bNames;
+        /** Entry hashes. */
+        private String[] _bHashes;
+        /** Which entries are trees. */
+        private boolean[] _bTrees;
+        /** Subtrees at hand. */
+        private Tree[] _bChildren;
+    }
+
+    /** Entry names, sorted. */
+    private final String[] _names;
+    /** Blob or tree hash of each entry. */
+    private final String[] _hashes;
+    /** Which entries are trees. */
+    private final boolean[] _trees;
+    /** Subtree of each tree entry, null until used. */
+    private final Tree[] _children;
+    /** Pack holding the subtrees not at hand. */
+    private final Pack _source;
+    /** Hash of this tree, null until computed. */
+    private String _hash;
+
+    /** Kinds of entries. */
+    private static final String TREE_KEY = "tree", BLOB_KEY = "blob";
+    /** The tree with no entries. */
+    static final Tree EMPTY = new Tree(new String[0], new String[0],
+            new boolean[0], new Tree[0], null);
+
+}
@@ -36,8 +36,12 @@ class Utils {
             for (Object val : vals) {
                 if (val instanceof byte[]) {
                     md.update((byte[]) val);
+                    Trace.hashed(((byte[]) val).length);
                 } else if (val instanceof String) {
-                    md.update(((String) val).getBytes(StandardCharsets.UTF_8));
+                    byte[] bytes =
+                            ((String) val).getBytes(StandardCharsets.UTF_8);
+                    md.update(bytes);
+                    Trace.hashed(bytes.length);
                 } else {
                     throw new IllegalArgumentException("improper type to sha1");
                 }
@@ -0,0 +1,168 @@
+package gitlet;
+
+import java.io.File;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Stream;
+
+import static gitlet.GitletOperator.*;
+
+/** Files of the working directory, found by walking it recursively on
+ *  the common fork-join pool: each directory is a task that lists its
+ *  entries and forks a task for each subdirectory, so a wide tree is
+ *  listed by every core at once. Paths matching a pattern of
+ *  .gitletignore are skipped, and an ignored directory is not entered.
+ *  The .gitlet directory is always ignored.
+ *
+ *  .gitletignore holds one glob pattern a line; blank lines and lines
+ *  starting with # are skipped. A pattern ending in / only matches
+ *  directories. A pattern holding another / matches paths from the
+ *  working directory, any other pattern matches names at any depth, so
+ *  "*.class" ignores every class file and "/build" the top build
+ *  directory only.
+ *  @author Shixuan (Wayne) Li
+ */
+final class WorkingTree {
+
+    /** Not to be made. */
+    private WorkingTree() {
+    }
+
+    /** Get the working files that are not ignored, as paths from the
+     *  working directory, "/" between directories.
+     * @return -- parallel stream of the paths, in no order. */
+    static Stream<String> files() {
+        ConcurrentLinkedQueue<String> result = new ConcurrentLinkedQueue<>();
+        ForkJoinPool.commonPool().invoke(new Walk(new File(PATH_WORKING),
+                "", new Ignore(readFrom(PATH_IGNORE)), result));
+        return result.parallelStream();
+    }
+
+    /** Task listing one directory and walking its subdirectories. */
+    private static class Walk extends RecursiveAction {
+
+        /** Walk DIRECTORY, whose path is PREFIX, adding its files to FOUND.
+         * @param directory -- directory to walk
+         * @param prefix -- path of the directory with a trailing /, or ""
+         *                  for the working directory
+         * @param ignore -- patterns of .gitletignore
+         * @param found -- paths of the files found so far. */
+        Walk(File directory, String prefix, Ignore ignore,
+             ConcurrentLinkedQueue<String> found) {
+            _directory = directory;
+            _prefix = prefix;
+            _ignore = ignore;
+            _found = found;
+        }
+
+        @Override
+        protected void compute() {
+            File[] entries = _directory.listFiles();
+            if (entries == null) {
+                return;
+            }
+            ArrayList<Walk> subdirectories = new ArrayList<>();
+            for (File entry : entries) {
+                String path = _prefix + entry.getName();
+                boolean directory = Files.isDirectory(entry.toPath(),
+                        LinkOption.NOFOLLOW_LINKS);
+                if (_ignore.matches(path, entry.getName(), directory)) {
+                    continue;
+                }
+                if (directory) {
+                    subdirectories.add(new Walk(entry, path + "/", _ignore,
+                            _found));
+                } else if (entry.isFile()) {
+                    _found.add(path);
+                }
+            }
+            invokeAll(subdirectories);
+        }
+
+        /** Walks are never serialized. */
+        private static final long serialVersionUID = 1L;
+        /** Directory walked. */
+        private final File _directory;
+        /** Its path, with a trailing /. */
+        private final String _prefix;
+        /** Patterns of .gitletignore. */
+        private final Ignore _ignore;
+        /** Paths of the files found. */
+        private final ConcurrentLinkedQueue<String> _found;
+
+    }
+
+    /** Patterns of .gitletignore. */
+    private static class Ignore {
+
+        /** Parse the lines of .gitletignore.
+         * @param lines -- lines, null if there is no .gitletignore. */
+        Ignore(String[] lines) {
+            add("/" + GITLET_PATH + "/");
+            if (lines == null) {
+                return;
+            }
+            for (String line : lines) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    add(line);
+                }
+            }
+        }
+
+        /** Add a pattern.
+         * @param pattern -- line of .gitletignore. */
+        private void add(String pattern) {
+            boolean directoriesOnly = pattern.endsWith("/");
+            if (directoriesOnly) {
+                pattern = pattern.substring(0, pattern.length() - 1);
+            }
+            boolean anchored = pattern.contains("/");
+            if (pattern.startsWith("/")) {
+                pattern = pattern.substring(1);
+            }
+            if (pattern.isEmpty()) {
+                return;
+            }
+            _matchers.add(FileSystems.getDefault()
+                    .getPathMatcher("glob:" + pattern));
+            _anchored.add(anchored);
+            _directoriesOnly.add(directoriesOnly);
+        }
+
+        /** Check if an entry of the working directory is ignored.
+         * @param path -- its path from the working directory
+         * @param name -- its name
+         * @param directory -- if it is a directory
+         * @return -- check result. */
+        boolean matches(String path, String name, boolean directory) {
+            for (int i = 0; i < _matchers.size(); i += 1) {
+                if (_directoriesOnly.get(i) && !directory) {
+                    continue;
+                }
+                if (_matchers.get(i).matches(
+                        Paths.get(_anchored.get(i) ? path : name))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /** Matchers of the patterns. */
+        private final ArrayList<PathMatcher> _matchers = new ArrayList<>();
+        /** If each pattern matches paths rather than names. */
+        private final ArrayList<Boolean> _anchored = new ArrayList<>();
+        /** If each pattern only matches directories. */
+        private final ArrayList<Boolean> _directoriesOnly =
+                new ArrayList<>();
+
+    }
+
+}